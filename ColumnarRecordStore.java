@@ -0,0 +1,286 @@
+package project3;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+* This class stores login records in primitive columns instead of objects.
+*
+* Record i is kept as terminals[i] (terminal * 2 + 1 for a login,
+* terminal * 2 for a logout), times[i] (epoch milliseconds) and userIds[i]
+* (the id of the username in the UserTable). The columns are kept in time
+* order. Every user also has the list of its rows, so a query only looks at
+* the records of its user. A record takes about 20 bytes, compared to well
+* over 100 bytes for a Record object in a RecordList node.
+*
+* A record that is later than every stored one is appended in constant
+* time. Other records wait in a list until the next read, which sorts them
+* once and merges them into the columns in one pass, so a log in any order
+* is loaded in O(n log n). Reads between out-of-order adds each pay for a
+* merge, so the store is meant to be loaded first and queried afterwards.
+*
+* Record objects are only created for the results of queries.
+*
+* @author Carsten Kaiser
+*/
+public class ColumnarRecordStore implements SessionQueries{
+
+    private static final int INITIAL_CAPACITY = 16;
+
+    private int[] terminals = new int[INITIAL_CAPACITY];
+    private long[] times = new long[INITIAL_CAPACITY];
+    private int[] userIds = new int[INITIAL_CAPACITY];
+    private int size;
+
+    // the rows of every user in time order, indexed by user id
+    private int[][] userRows = new int[INITIAL_CAPACITY][];
+    private int[] userSizes = new int[INITIAL_CAPACITY];
+
+    // records that were not later than the last row, merged by the next read
+    private List<Record> pending = new ArrayList<>();
+
+    /**
+    * default constructor that creates an empty store
+    */
+    public ColumnarRecordStore(){
+    }
+
+    /**
+    * adds the record to the store
+    *
+    * a record that is later than the last stored one is appended in
+    * constant time, others are merged into the columns by the next read
+    *
+    * @param record the record to add
+    * @return true if the record was added, false if it is null
+    */
+    public boolean add(Record record){
+        if(record == null){
+            return false;
+        }
+        if(size > 0 && record.getTimeMillis() <= times[size - 1]){
+            pending.add(record);
+        } else {
+            ensureCapacity(size + 1);
+            set(size, record);
+            addRow(size++);
+        }
+        return true;
+    }
+
+    /**
+    * adds all records of the collection, sorting those that are out of
+    * order once and merging them into the columns in one pass
+    *
+    * null elements are skipped
+    *
+    * @param records the records to add
+    * @return the number of records added
+    */
+    public int addAll(Collection<? extends Record> records){
+        int added = 0;
+        for(Record record : records){
+            if(add(record)){
+                added++;
+            }
+        }
+        merge();
+        return added;
+    }
+
+    /**
+    * returns the number of records in the store
+    *
+    * @return number of records
+    */
+    public int size(){
+        return size + pending.size();
+    }
+
+    /**
+    * returns the record at the specified position in time order
+    *
+    * @param index the position of the record
+    * @return a Record built from the columns
+    * @throws IndexOutOfBoundsException if the index is out of range
+    */
+    public Record get(int index){
+        merge();
+        if(index < 0 || index >= size){
+            throw new IndexOutOfBoundsException("Index out of bounds: " + index);
+        }
+        return record(index);
+    }
+
+    /**
+    * returns the first login session for the specified user
+    *
+    * @param user specified user
+    * @return first login session for user
+    *
+    * @throws NoSuchElementException if the specified user has no login records
+    * @throws IllegalArgumentException if user is null or empty
+    */
+    public Session getFirstSession(String user){
+        return SessionPairing.first(recordsOf(user, false));
+    }
+
+    /**
+    * returns the last login session for the specified user
+    *
+    * @param user specified user
+    * @return last login session for user
+    *
+    * @throws NoSuchElementException if the specified user has no login records
+    * @throws IllegalArgumentException if user is null or empty
+    */
+    public Session getLastSession(String user){
+        return SessionPairing.last(recordsOf(user, true));
+    }
+
+    /**
+    * returns the total time in milliseconds the specified user has been
+    * logged in, counting only sessions with a logout record
+    *
+    * @param user the specified user
+    * @return the total time in milliseconds
+    *
+    * @throws NoSuchElementException if the specified user does not match any records
+    * @throws IllegalArgumentException if user is null or empty
+    */
+    public long getTotalTime(String user){
+        return SessionPairing.totalTime(recordsOf(user, false));
+    }
+
+    /**
+    * returns all login sessions of the specified user,
+    * ordered from earliest to latest login time
+    *
+    * @param user the specified user
+    * @return a sorted list of the user's sessions
+    *
+    * @throws NoSuchElementException if the specified user does not match any records
+    * @throws IllegalArgumentException if user is null or empty
+    */
+    public SortedLinkedList<Session> getAllSessions(String user){
+        return SessionPairing.all(recordsOf(user, false));
+    }
+
+    /*
+     * Returns the records of the user in time order, or latest first.
+     */
+    private UserRecords recordsOf(String user, boolean descending){
+        if(user == null || user.isEmpty()){
+            throw new IllegalArgumentException("Invalid user argument: Username must be non-null and non-empty.");
+        }
+        merge();
+        return new UserRecords(UserTable.lookup(user), descending);
+    }
+
+    /*
+     * Walks the rows of one user and builds a Record for each of them.
+     */
+    private final class UserRecords extends SessionPairing.UserRecords {
+        final int[] rows;
+        final int count;
+        final boolean descending;
+        int index;
+
+        UserRecords(int id, boolean descending){
+            boolean known = id >= 0 && id < userSizes.length;
+            this.rows = known ? userRows[id] : null;
+            this.count = known ? userSizes[id] : 0;
+            this.descending = descending;
+            index = descending ? count : -1;
+        }
+
+        @Override
+        Record nextRecord(){
+            index += descending ? -1 : 1;
+            if(index < 0 || index >= count){
+                return null;
+            }
+            scanned++;
+            return record(rows[index]);
+        }
+    }
+
+    private Record record(int row){
+        return new Record(terminals[row] >>> 1, (terminals[row] & 1) != 0, userIds[row], times[row]);
+    }
+
+    private void set(int row, Record record){
+        terminals[row] = (record.getTerminal() << 1) | (record.isLogin() ? 1 : 0);
+        times[row] = record.getTimeMillis();
+        userIds[row] = record.getUserId();
+    }
+
+    /* Appends the row to the rows of its user. */
+    private void addRow(int row){
+        int id = userIds[row];
+        if(id >= userSizes.length){
+            int length = Math.max(id + 1, userSizes.length * 2);
+            userRows = Arrays.copyOf(userRows, length);
+            userSizes = Arrays.copyOf(userSizes, length);
+        }
+        int[] rows = userRows[id];
+        if(rows == null){
+            rows = userRows[id] = new int[8];
+        } else if(userSizes[id] == rows.length){
+            rows = userRows[id] = Arrays.copyOf(rows, rows.length * 2);
+        }
+        rows[userSizes[id]++] = row;
+    }
+
+    /*
+     * Sorts the pending records and merges them into the columns from the
+     * back, so every row moves at most once. The rows of the users are
+     * numbered anew afterwards.
+     */
+    private void merge(){
+        if(pending.isEmpty()){
+            return;
+        }
+
+        //reversed first, so the stable sort puts equal times newest first like SortedLinkedList
+        Collections.reverse(pending);
+        pending.sort(null);
+
+        ensureCapacity(size + pending.size());
+        int row = size - 1;
+        int target = size + pending.size();
+        for(int i = pending.size() - 1; i >= 0; i--){
+            Record record = pending.get(i);
+            //a new record goes in front of the stored ones with the same time
+            while(row >= 0 && times[row] >= record.getTimeMillis()){
+                target--;
+                terminals[target] = terminals[row];
+                times[target] = times[row];
+                userIds[target] = userIds[row];
+                row--;
+            }
+            set(--target, record);
+        }
+        size += pending.size();
+        pending = new ArrayList<>();
+
+        Arrays.fill(userSizes, 0);
+        for(int i = 0; i < size; i++){
+            addRow(i);
+        }
+    }
+
+    private void ensureCapacity(int capacity){
+        if(capacity <= times.length){
+            return;
+        }
+        int newCapacity = Math.max(capacity, times.length + (times.length >> 1));
+        terminals = Arrays.copyOf(terminals, newCapacity);
+        times = Arrays.copyOf(times, newCapacity);
+        userIds = Arrays.copyOf(userIds, newCapacity);
+    }
+}
@@ -0,0 +1,261 @@
+package project3;
+
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+* This class stores Record objects so that they can be queried while other
+* threads are still adding records.
+*
+* Every record is given a sequence number when it is added and is stored in
+* a concurrent skip list of its user, ordered by time; records with equal
+* times are ordered newest first, as in a RecordList. A Snapshot only sees
+* the records up to the sequence number that was published when it was
+* taken, so all queries against one snapshot see the same records.
+*
+* Adds from several threads store their records at the same time, each in
+* the skip list of its user. Sequence numbers are then published in order
+* with a compare-and-set: an add whose record is stored waits only for the
+* adds with smaller numbers to publish theirs. Queries never take a lock and
+* never wait for an add to finish.
+*
+* @author Carsten Kaiser
+*/
+public class ConcurrentRecordList implements SessionQueries{
+
+    // records by user id, ordered by time and then by sequence number, latest first
+    private final Map<Integer, ConcurrentSkipListMap<Key, Record>> users = new ConcurrentHashMap<>();
+
+    // the last sequence number handed out to an add
+    private final AtomicLong sequence = new AtomicLong();
+    // every record up to this sequence number is stored
+    private final AtomicLong published = new AtomicLong();
+
+    /**
+    * default constructor that creates an empty ConcurrentRecordList object
+    */
+    public ConcurrentRecordList(){
+    }
+
+    /**
+    * adds the record to the list; may be called from several threads at once
+    *
+    * the record is visible to snapshots taken after this method returns
+    *
+    * @param record the record to add
+    * @return true if the record was added, false if it is null
+    */
+    public boolean add(Record record){
+        if(record == null){
+            return false;
+        }
+
+        long seq = sequence.incrementAndGet();
+        users.computeIfAbsent(record.getUserId(), k -> new ConcurrentSkipListMap<>())
+            .put(new Key(record.getTimeMillis(), seq), record);
+
+        //a snapshot must not see this record before the ones with smaller numbers
+        while(!published.compareAndSet(seq - 1, seq)){
+            Thread.yield();
+        }
+        return true;
+    }
+
+    /**
+    * returns the number of records visible to new snapshots
+    *
+    * @return number of records
+    */
+    public int size(){
+        return (int) published.get();
+    }
+
+    /**
+    * returns a consistent view of the records added so far
+    *
+    * @return a snapshot of the list
+    */
+    public Snapshot snapshot(){
+        return new Snapshot(published.get());
+    }
+
+    /**
+    * returns the first login session for the specified user in a new snapshot
+    *
+    * @param user specified user
+    * @return first login session for user
+    *
+    * @throws NoSuchElementException if the specified user has no login records
+    * @throws IllegalArgumentException if user is null or empty
+    */
+    public Session getFirstSession(String user){
+        return snapshot().getFirstSession(user);
+    }
+
+    /**
+    * returns the last login session for the specified user in a new snapshot
+    *
+    * @param user specified user
+    * @return last login session for user
+    *
+    * @throws NoSuchElementException if the specified user has no login records
+    * @throws IllegalArgumentException if user is null or empty
+    */
+    public Session getLastSession(String user){
+        return snapshot().getLastSession(user);
+    }
+
+    /**
+    * returns the total time the specified user has been logged in, in a new snapshot
+    *
+    * @param user the specified user
+    * @return the total time in milliseconds
+    *
+    * @throws NoSuchElementException if the specified user does not match any records
+    * @throws IllegalArgumentException if user is null or empty
+    */
+    public long getTotalTime(String user){
+        return snapshot().getTotalTime(user);
+    }
+
+    /**
+    * returns all login sessions of the specified user in a new snapshot
+    *
+    * @param user the specified user
+    * @return a sorted list of the user's sessions
+    *
+    * @throws NoSuchElementException if the specified user does not match any records
+    * @throws IllegalArgumentException if user is null or empty
+    */
+    public SortedLinkedList<Session> getAllSessions(String user){
+        return snapshot().getAllSessions(user);
+    }
+
+    /**
+    * This class is a read-only view of the records that were published
+    * when it was created. It can be shared between threads.
+    */
+    public class Snapshot implements SessionQueries{
+
+        private final long limit;
+
+        private Snapshot(long limit){
+            this.limit = limit;
+        }
+
+        /**
+        * returns the number of records in this snapshot
+        *
+        * @return number of records
+        */
+        public int size(){
+            return (int) limit;
+        }
+
+        /**
+        * returns the first login session for the specified user
+        *
+        * @param user specified user
+        * @return first login session for user
+        *
+        * @throws NoSuchElementException if the specified user has no login records
+        * @throws IllegalArgumentException if user is null or empty
+        */
+        public Session getFirstSession(String user){
+            return SessionPairing.first(recordsOf(user, false));
+        }
+
+        /**
+        * returns the last login session for the specified user
+        *
+        * @param user specified user
+        * @return last login session for user
+        *
+        * @throws NoSuchElementException if the specified user has no login records
+        * @throws IllegalArgumentException if user is null or empty
+        */
+        public Session getLastSession(String user){
+            return SessionPairing.last(recordsOf(user, true));
+        }
+
+        /**
+        * returns the total time in milliseconds the specified user has been
+        * logged in, counting only sessions with a logout record
+        *
+        * @param user the specified user
+        * @return the total time in milliseconds
+        *
+        * @throws NoSuchElementException if the specified user does not match any records
+        * @throws IllegalArgumentException if user is null or empty
+        */
+        public long getTotalTime(String user){
+            return SessionPairing.totalTime(recordsOf(user, false));
+        }
+
+        /**
+        * returns all login sessions of the specified user,
+        * ordered from earliest to latest login time
+        *
+        * @param user the specified user
+        * @return a sorted list of the user's sessions
+        *
+        * @throws NoSuchElementException if the specified user does not match any records
+        * @throws IllegalArgumentException if user is null or empty
+        */
+        public SortedLinkedList<Session> getAllSessions(String user){
+            return SessionPairing.all(recordsOf(user, false));
+        }
+
+        /* Returns the user's records in this snapshot, in time order or latest first. */
+        private SessionPairing.UserRecords recordsOf(String user, boolean descending){
+            if(user == null || user.isEmpty()){
+                throw new IllegalArgumentException("Invalid user argument: Username must be non-null and non-empty.");
+            }
+
+            ConcurrentSkipListMap<Key, Record> records = users.get(UserTable.lookup(user));
+            Map<Key, Record> ordered = (records == null) ? Collections.emptyMap()
+                : descending ? records.descendingMap() : records;
+            Iterator<Map.Entry<Key, Record>> entries = ordered.entrySet().iterator();
+
+            //records added after the snapshot was taken are skipped
+            return new SessionPairing.UserRecords(){
+                @Override
+                Record nextRecord(){
+                    while(entries.hasNext()){
+                        Map.Entry<Key, Record> entry = entries.next();
+                        if(entry.getKey().seq <= limit){
+                            scanned++;
+                            return entry.getValue();
+                        }
+                    }
+                    return null;
+                }
+            };
+        }
+    }
+
+    /*
+     * Orders records by time, and records with equal times latest added
+     * first, like SortedLinkedList.
+     */
+    private static final class Key implements Comparable<Key> {
+        final long time;
+        final long seq;
+
+        Key(long time, long seq){
+            this.time = time;
+            this.seq = seq;
+        }
+
+        @Override
+        public int compareTo(Key other){
+            int cmp = Long.compare(time, other.time);
+            return (cmp != 0) ? cmp : Long.compare(other.seq, seq);
+        }
+    }
+}
@@ -0,0 +1,145 @@
+package project3;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+* This class counts non-negative values, such as latencies in nanoseconds,
+* in buckets of logarithmic width, like HdrHistogram does.
+*
+* Values below 16 get a bucket each. Above that every power of two is split
+* into 8 buckets, so a value is known to within 12.5% no matter how large
+* it is, and the whole range of long fits in 488 buckets. Recording a value
+* is a few bit operations and one atomic add, without a lock, so several
+* threads may record at once.
+*
+* @author Carsten Kaiser
+*/
+public class Histogram{
+
+    // values below LINEAR are counted exactly
+    private static final int LINEAR = 16;
+    // log2 of the number of buckets per power of two above LINEAR
+    private static final int SUB_BITS = 3;
+    private static final int SUB_BUCKETS = 1 << SUB_BITS;
+    // 2^4 is the first power of two above the linear buckets, 2^62 the last
+    private static final int BUCKETS = LINEAR + (63 - 4) * SUB_BUCKETS;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final LongAdder count = new LongAdder();
+    private final LongAdder sum = new LongAdder();
+    private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+    /**
+    * counts the value
+    *
+    * @param value the value to count, negative values are counted as 0
+    */
+    public void record(long value){
+        if(value < 0){
+            value = 0;
+        }
+        counts.incrementAndGet(bucketOf(value));
+        count.increment();
+        sum.add(value);
+        max.accumulate(value);
+    }
+
+    /**
+    * returns the number of values counted
+    *
+    * @return number of values
+    */
+    public long getCount(){
+        return count.sum();
+    }
+
+    /**
+    * returns the largest value counted
+    *
+    * @return largest value, 0 if none was counted
+    */
+    public long getMax(){
+        return max.get();
+    }
+
+    /**
+    * returns the mean of the values counted
+    *
+    * @return mean value, 0 if none was counted
+    */
+    public double getMean(){
+        long n = count.sum();
+        return (n == 0) ? 0 : (double) sum.sum() / n;
+    }
+
+    /**
+    * returns a value that the given share of the counted values does not
+    * exceed; the result is the upper end of the bucket the value falls in,
+    * but never more than the largest value counted
+    *
+    * @param percentile the share of values, from 0 to 100
+    * @return the value at the percentile, 0 if none was counted
+    * @throws IllegalArgumentException if percentile is not in [0, 100]
+    */
+    public long getValueAtPercentile(double percentile){
+        if(!(percentile >= 0 && percentile <= 100)){
+            throw new IllegalArgumentException("Percentile must be between 0 and 100.");
+        }
+
+        long total = 0;
+        for(int i = 0; i < BUCKETS; i++){
+            total += counts.get(i);
+        }
+        if(total == 0){
+            return 0;
+        }
+
+        //the rank of the value, counted from 1
+        long rank = Math.max(1, (long) Math.ceil(percentile / 100 * total));
+        long seen = 0;
+        for(int i = 0; i < BUCKETS; i++){
+            seen += counts.get(i);
+            if(seen >= rank){
+                return Math.min(highestValueIn(i), getMax());
+            }
+        }
+        return getMax();
+    }
+
+    /**
+    * forgets all counted values; values recorded at the same time may be
+    * partly kept
+    */
+    public void reset(){
+        for(int i = 0; i < BUCKETS; i++){
+            counts.set(i, 0);
+        }
+        count.reset();
+        sum.reset();
+        max.reset();
+    }
+
+    /* Returns the bucket of a non-negative value. */
+    static int bucketOf(long value){
+        if(value < LINEAR){
+            return (int) value;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        int sub = (int) (value >>> (exponent - SUB_BITS)) - SUB_BUCKETS;
+        return LINEAR + (exponent - 4) * SUB_BUCKETS + sub;
+    }
+
+    /* Returns the largest value that falls in the bucket. */
+    static long highestValueIn(int bucket){
+        if(bucket < LINEAR){
+            return bucket;
+        }
+        int exponent = 4 + (bucket - LINEAR) / SUB_BUCKETS;
+        long top = SUB_BUCKETS + (bucket - LINEAR) % SUB_BUCKETS;
+        long next = (top + 1) << (exponent - SUB_BITS);
+        //the last bucket ends at Long.MAX_VALUE
+        return (next < 0) ? Long.MAX_VALUE : next - 1;
+    }
+}
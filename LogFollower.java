@@ -0,0 +1,236 @@
+package project3;
+
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+* This class follows a log file that is still being written to.
+*
+* The follower remembers how many bytes of the file it has consumed and,
+* whenever the file changes, parses only the complete lines that were
+* appended since. A line without its line feed is left in the file until
+* it is finished. If the file is replaced by a new file (it was rotated)
+* or was truncated, reading starts again from the beginning. A truncated
+* file is noticed when it is shorter than the consumed bytes, and also when
+* it has grown past them again: then its first bytes differ from the ones
+* read at the start, or the consumed bytes no longer end with a line feed.
+*
+* Changes are noticed through a WatchService on the file's directory; the
+* file is also checked once per poll interval in case an event is missed.
+*
+* @author Carsten Kaiser
+*/
+public class LogFollower implements Runnable, Closeable{
+
+    private static final int BLOCK_SIZE = 1 << 20;
+    private static final long POLL_INTERVAL_MILLIS = 1000;
+    private static final int HEAD_SIZE = 256;
+
+    private Path file;
+    private Consumer<Record> sink;
+    private LogReader.MalformedLineHandler handler;
+
+    // bytes of the current file that have been consumed
+    private long position;
+    // lines of the current file that have been consumed
+    private long lineCount;
+    // identity of the current file, used to notice rotation
+    private Object fileKey;
+    // the first consumed bytes of the current file, used to notice truncation
+    private byte[] head;
+
+    private volatile boolean closed;
+    private volatile WatchService watcher;
+
+    /**
+    * three-parameter constructor that creates a follower for the given file
+    *
+    * the file is read from its beginning on the first poll
+    *
+    * @throws IllegalArgumentException if file or sink is null
+    *
+    * @param file the log file to follow
+    * @param sink receives every record read from the file, in file order
+    * @param handler receives the malformed lines, may be null to ignore them
+    */
+    public LogFollower(Path file, Consumer<Record> sink, LogReader.MalformedLineHandler handler){
+        if(file == null || sink == null){
+            throw new IllegalArgumentException("File and sink cannot be null.");
+        }
+        this.file = file.toAbsolutePath();
+        this.sink = sink;
+        this.handler = handler;
+    }
+
+    /**
+    * reads the complete lines appended to the file since the last poll
+    *
+    * @return the number of records passed to the sink
+    * @throws IOException if the file cannot be read; a missing file,
+    * for example in the middle of a rotation, is not an error
+    */
+    public synchronized int poll() throws IOException{
+        BasicFileAttributes attributes;
+        try {
+            attributes = Files.readAttributes(file, BasicFileAttributes.class);
+        } catch (NoSuchFileException ex) {
+            return 0;
+        }
+
+        int count = 0;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            //a new file, a shorter one or one that was rewritten is read from the start
+            Object key = attributes.fileKey();
+            if((key != null && fileKey != null && !key.equals(fileKey)) || channel.size() < position
+            || (position > 0 && !readBefore(channel))){
+                position = 0;
+                lineCount = 0;
+                head = null;
+            }
+            fileKey = key;
+
+            ByteBuffer block = ByteBuffer.allocate(BLOCK_SIZE);
+
+            while(position < channel.size()){
+                block.clear();
+                int read = channel.read(block, position);
+                if(read <= 0){
+                    break;
+                }
+
+                int end = lastLineEnd(block.array(), read);
+                if(end < 0){
+                    //a partial line; read a bigger block if the line does not fit
+                    if(read < block.capacity()){
+                        break;
+                    }
+                    block = ByteBuffer.allocate(block.capacity() * 2);
+                    continue;
+                }
+
+                if(head == null){
+                    head = Arrays.copyOf(block.array(), Math.min(end + 1, HEAD_SIZE));
+                }
+                count += parse(Arrays.copyOf(block.array(), end + 1));
+                position += end + 1;
+            }
+        }
+        return count;
+    }
+
+    /**
+    * polls the file whenever it changes until the follower is closed
+    */
+    @Override
+    public void run(){
+        try (WatchService watchService = file.getFileSystem().newWatchService()) {
+            watcher = watchService;
+            file.getParent().register(watchService, StandardWatchEventKinds.ENTRY_CREATE,
+                StandardWatchEventKinds.ENTRY_MODIFY, StandardWatchEventKinds.ENTRY_DELETE);
+
+            while(!closed){
+                WatchKey key = watchService.poll(POLL_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+                if(key != null){
+                    //drop the events, the file is polled either way
+                    key.pollEvents();
+                    key.reset();
+                }
+                pollQuietly();
+            }
+        } catch (ClosedWatchServiceException | InterruptedException ex) {
+            //the follower was closed
+        } catch (IOException ex) {
+            System.err.println("Error: cannot watch " + file + ": " + ex.getMessage());
+        }
+    }
+
+    /**
+    * stops following the file
+    *
+    * @throws IOException if the watch service cannot be closed
+    */
+    @Override
+    public void close() throws IOException{
+        closed = true;
+        WatchService watchService = watcher;
+        if(watchService != null){
+            watchService.close();
+        }
+    }
+
+    private void pollQuietly(){
+        try {
+            poll();
+        } catch (IOException ex) {
+            System.err.println("Error: cannot read " + file + ": " + ex.getMessage());
+        }
+    }
+
+    /*
+     * Returns whether the file still starts with the head and has a line
+     * feed as the last consumed byte, as it had when those bytes were read.
+     */
+    private boolean readBefore(FileChannel channel) throws IOException{
+        ByteBuffer start = ByteBuffer.allocate(head.length);
+        ByteBuffer lastByte = ByteBuffer.allocate(1);
+        if(!readFully(channel, start, 0) || !readFully(channel, lastByte, position - 1)){
+            return false;
+        }
+        return Arrays.equals(start.array(), head) && lastByte.get(0) == '\n';
+    }
+
+    /* Fills the buffer from the position on, false if the file ends first. */
+    private static boolean readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException{
+        while(buffer.hasRemaining()){
+            int read = channel.read(buffer, position + buffer.position());
+            if(read < 0){
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /* Returns the index of the last line feed in bytes[0, length), or -1. */
+    private static int lastLineEnd(byte[] bytes, int length){
+        for(int i = length - 1; i >= 0; i--){
+            if(bytes[i] == '\n'){
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /* Parses complete lines and passes the records to the sink. */
+    private int parse(byte[] lines) throws IOException{
+        long firstLine = lineCount;
+        LogReader reader = new LogReader(new ByteArrayInputStream(lines), (lineNumber, line) -> {
+            if(handler != null){
+                handler.malformedLine(firstLine + lineNumber, line);
+            }
+        });
+
+        int count = 0;
+        Record record;
+        while((record = reader.next()) != null){
+            sink.accept(record);
+            count++;
+        }
+        lineCount += reader.getLineNumber();
+        return count;
+    }
+}
@@ -0,0 +1,207 @@
+package project3;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+/**
+* This class generates synthetic login logs in the same format as input.txt
+*
+* Every terminal is used by one user at a time, so the logs follow the same
+* rules as real ones. Users are picked either uniformly or with a Zipf-like
+* skew, where a few users own most of the sessions.
+*
+* Usage: java project3.LogGenerator RECORDS USERS [sorted|shuffled|mostly-sorted] [SKEW] [SEED]
+*
+* @author Carsten Kaiser
+*/
+public class LogGenerator{
+
+    /**
+    * The order in which the generated records are returned.
+    */
+    public enum Order {
+        /** ordered by time */
+        SORTED,
+        /** in random order */
+        SHUFFLED,
+        /** ordered by time except for some nearby records that are swapped */
+        MOSTLY_SORTED
+    }
+
+    // first login time of the generated logs, the same era as input.txt
+    private static final long START_TIME = 71234567890L;
+    // share of sessions that are never logged out
+    private static final double OPEN_SESSION_RATE = 0.03;
+
+    private Random random;
+    private String[] usernames;
+    // cumulative weights used to pick a user
+    private double[] cumulative;
+
+    /**
+    * three-parameter constructor that creates a generator
+    *
+    * @throws IllegalArgumentException if users is not positive or skew is negative
+    *
+    * @param seed the random seed, the same seed gives the same log
+    * @param users the number of distinct usernames
+    * @param skew 0 for uniformly picked users, larger values give the
+    * user with rank r a weight of 1 / r^skew
+    */
+    public LogGenerator(long seed, int users, double skew){
+        if(users <= 0){
+            throw new IllegalArgumentException("Number of users must be positive.");
+        }
+        if(skew < 0){
+            throw new IllegalArgumentException("Skew cannot be negative.");
+        }
+
+        random = new Random(seed);
+        usernames = new String[users];
+        cumulative = new double[users];
+
+        double sum = 0;
+        for(int i = 0; i < users; i++){
+            usernames[i] = "user" + i;
+            sum += 1.0 / Math.pow(i + 1, skew);
+            cumulative[i] = sum;
+        }
+    }
+
+    /**
+    * returns the username of the user with the given rank
+    *
+    * @param rank rank of the user, 0 is the most active one
+    * @return username
+    */
+    public String getUsername(int rank){
+        return usernames[rank];
+    }
+
+    /**
+    * returns the number of distinct usernames
+    *
+    * @return number of users
+    */
+    public int getUserCount(){
+        return usernames.length;
+    }
+
+    /**
+    * generates a log with the given number of records
+    *
+    * @param records the number of records to generate
+    * @param order the order of the returned records
+    * @return the generated records
+    */
+    public List<Record> generate(int records, Order order){
+        List<Record> log = new ArrayList<>(records);
+
+        int terminalCount = Math.max(16, usernames.length / 2);
+        int[] terminals = new int[terminalCount];
+        long[] freeAt = new long[terminalCount];
+        for(int i = 0; i < terminalCount; i++){
+            terminals[i] = i + 1;
+            freeAt[i] = START_TIME;
+        }
+        int nextTerminal = terminalCount + 1;
+
+        while(log.size() < records){
+            int slot = random.nextInt(terminalCount);
+            String user = pickUser();
+            long login = freeAt[slot] + 1 + random.nextInt(100000);
+            log.add(new Record(terminals[slot], true, user, login));
+
+            if(log.size() < records && random.nextDouble() >= OPEN_SESSION_RATE){
+                long logout = login + 1 + random.nextInt(5000000);
+                log.add(new Record(terminals[slot], false, user, logout));
+                freeAt[slot] = logout;
+            } else {
+                //the terminal stays taken, continue with a new one
+                terminals[slot] = nextTerminal++;
+                freeAt[slot] = login;
+            }
+        }
+
+        //terminals run on their own clocks, so put the records in time order first
+        Collections.sort(log);
+
+        if(order == Order.SHUFFLED){
+            Collections.shuffle(log, random);
+        } else if(order == Order.MOSTLY_SORTED){
+            for(int i = 0; i < records / 10; i++){
+                int a = random.nextInt(records);
+                int b = Math.min(records - 1, a + 1 + random.nextInt(20));
+                Collections.swap(log, a, b);
+            }
+        }
+        return log;
+    }
+
+    /**
+    * writes the records in the log file format, one per line
+    *
+    * @param records the records to write
+    * @param out where to write them
+    * @throws IOException if writing fails
+    */
+    public static void write(List<Record> records, Writer out) throws IOException{
+        for(Record record : records){
+            out.write(Integer.toString(record.isLogin() ? record.getTerminal() : -record.getTerminal()));
+            out.write(' ');
+            out.write(Long.toString(record.getTimeMillis()));
+            out.write(' ');
+            out.write(record.getUsername());
+            out.write('\n');
+        }
+        out.flush();
+    }
+
+    /* Picks a user according to the weights. */
+    private String pickUser(){
+        double target = random.nextDouble() * cumulative[cumulative.length - 1];
+        int index = Arrays.binarySearch(cumulative, target);
+        if(index < 0){
+            index = -index - 1;
+        }
+        return usernames[Math.min(index, usernames.length - 1)];
+    }
+
+    /**
+     * Writes a synthetic log to standard output.
+     *
+     * @param args number of records, number of users, and optionally
+     * the order, the skew and the seed
+     */
+    public static void main(String[] args){
+        if(args.length < 2){
+            System.err.println("Usage: java project3.LogGenerator RECORDS USERS [sorted|shuffled|mostly-sorted] [SKEW] [SEED]");
+            System.exit(1);
+        }
+
+        try {
+            int records = Integer.parseInt(args[0]);
+            int users = Integer.parseInt(args[1]);
+            Order order = (args.length > 2) ? Order.valueOf(args[2].toUpperCase().replace('-', '_')) : Order.SORTED;
+            double skew = (args.length > 3) ? Double.parseDouble(args[3]) : 0;
+            long seed = (args.length > 4) ? Long.parseLong(args[4]) : 42;
+
+            LogGenerator generator = new LogGenerator(seed, users, skew);
+            Writer out = new BufferedWriter(new OutputStreamWriter(System.out), 1 << 16);
+            write(generator.generate(records, order), out);
+        } catch (IllegalArgumentException ex) {
+            System.err.println("Error: " + ex.getMessage());
+            System.exit(1);
+        } catch (IOException ex) {
+            System.err.println("Error: the log could not be written.");
+            System.exit(1);
+        }
+    }
+}
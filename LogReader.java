@@ -0,0 +1,346 @@
+package project3;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+* This class reads login records from a log file.
+*
+* Every line of the log has the format
+*     terminal time username
+* where a positive terminal number marks a login and a negative one a logout,
+* and time is the number of milliseconds since the epoch.
+*
+* The reader works directly on a byte buffer: numbers are parsed from the
+* bytes without creating intermediate Strings, and each distinct username is
+* decoded and looked up in the UserTable only once; after that its bytes map
+* straight to the user id stored in the records.
+* Lines that miss a field are passed to a MalformedLineHandler and skipped.
+* Lines whose terminal or time is not a number, or whose terminal is 0, are
+* skipped without being reported, as the log has always been read.
+*
+* @author Carsten Kaiser
+*/
+public class LogReader implements Closeable{
+
+    /**
+    * Receives the lines of the log that are not valid records.
+    */
+    public interface MalformedLineHandler{
+        /**
+        * called once for every malformed line
+        *
+        * @param lineNumber the number of the line in the log, starting at 1
+        * @param line the text of the line
+        */
+        void malformedLine(long lineNumber, String line);
+    }
+
+    private static final int BUFFER_SIZE = 1 << 16;
+    // returned by parseLine for a line that is skipped without being reported
+    private static final Record INVALID = new Record(1, true, UserTable.NULL_ID, 0);
+
+    private InputStream in;
+    private MalformedLineHandler handler;
+
+    private byte[] buffer = new byte[BUFFER_SIZE];
+    private int position;
+    private int limit;
+    private boolean endOfInput;
+    private long lineNumber;
+
+    // open-addressing table of the usernames seen so far, with their user ids
+    private byte[][] nameBytes = new byte[64][];
+    private int[] nameIds = new int[64];
+    private int nameCount;
+
+    /**
+    * two-parameter constructor that creates a reader for the given stream
+    *
+    * @throws IllegalArgumentException if the stream is null
+    *
+    * @param in the stream to read the log from
+    * @param handler receives the malformed lines, may be null to ignore them
+    */
+    public LogReader(InputStream in, MalformedLineHandler handler){
+        if(in == null){
+            throw new IllegalArgumentException("Input stream cannot be null.");
+        }
+        this.in = in;
+        this.handler = handler;
+    }
+
+    /**
+    * returns the next valid record of the log, skipping malformed lines
+    *
+    * @return the next record, or null if the end of the log has been reached
+    * @throws IOException if reading from the stream fails
+    */
+    public Record next() throws IOException{
+        while(true){
+            int end = nextLineEnd();
+            if(end < 0){
+                return null;
+            }
+
+            int start = position;
+            position = end + 1;
+            lineNumber++;
+
+            //ignore the carriage return of windows line endings
+            if(end > start && buffer[end - 1] == '\r'){
+                end--;
+            }
+
+            Record record = parseLine(start, end);
+            if(record != null && record != INVALID){
+                Metrics.lineParsed();
+                return record;
+            }
+            Metrics.lineRejected();
+            if(record == null && handler != null){
+                handler.malformedLine(lineNumber, new String(buffer, start, end - start, StandardCharsets.UTF_8));
+            }
+        }
+    }
+
+    /**
+    * reads all remaining records of the log and adds them to the list
+    *
+    * @param list the list to add the records to
+    * @return the number of records added
+    * @throws IOException if reading from the stream fails
+    */
+    public int readAll(RecordList list) throws IOException{
+        List<Record> records = new ArrayList<>();
+        Record record;
+        while((record = next()) != null){
+            records.add(record);
+        }
+        return list.addAll(records);
+    }
+
+    /**
+    * returns the number of lines read so far, including malformed ones
+    *
+    * @return number of lines read
+    */
+    public long getLineNumber(){
+        return lineNumber;
+    }
+
+    /**
+    * closes the underlying stream
+    *
+    * @throws IOException if closing the stream fails
+    */
+    @Override
+    public void close() throws IOException{
+        in.close();
+    }
+
+    /*
+     * Returns the index of the byte that ends the next line, reading more
+     * input as needed. At the end of the input the last line may have no
+     * line feed; its end is then the end of the buffered data.
+     * Returns -1 if there are no more lines.
+     */
+    private int nextLineEnd() throws IOException{
+        int scanFrom = position;
+        while(true){
+            for(int i = scanFrom; i < limit; i++){
+                if(buffer[i] == '\n'){
+                    return i;
+                }
+            }
+
+            if(endOfInput){
+                if(position < limit){
+                    //pretend the last line ended with a line feed
+                    ensureCapacity();
+                    buffer[limit] = '\n';
+                    return limit++;
+                }
+                return -1;
+            }
+
+            scanFrom = limit - position;
+            fill();
+        }
+    }
+
+    /*
+     * Moves the unread bytes to the front of the buffer and reads more input,
+     * growing the buffer if a single line does not fit.
+     */
+    private void fill() throws IOException{
+        if(position > 0){
+            System.arraycopy(buffer, position, buffer, 0, limit - position);
+            limit -= position;
+            position = 0;
+        }
+        ensureCapacity();
+
+        int read = in.read(buffer, limit, buffer.length - limit);
+        if(read < 0){
+            endOfInput = true;
+        } else {
+            limit += read;
+        }
+    }
+
+    /* Makes sure there is room for at least one more byte in the buffer. */
+    private void ensureCapacity(){
+        if(limit == buffer.length){
+            buffer = Arrays.copyOf(buffer, buffer.length * 2);
+        }
+    }
+
+    /*
+     * Parses the line in buffer[start, end). The fields are checked in
+     * order: a missing field makes the line malformed, a field that is there
+     * but not valid makes it INVALID. A terminal of 0 is only found out once
+     * the whole line has been read.
+     * Returns null if the line is malformed.
+     */
+    private Record parseLine(int start, int end){
+        //terminal
+        int from = skipBlanks(start, end);
+        int to = tokenEnd(from, end);
+        if(from == to){
+            return null;
+        }
+        long terminal = parseNumber(from, to);
+        if(terminal == Long.MIN_VALUE || terminal > Integer.MAX_VALUE || terminal < -Integer.MAX_VALUE){
+            return INVALID;
+        }
+
+        //time
+        from = skipBlanks(to, end);
+        to = tokenEnd(from, end);
+        if(from == to){
+            return null;
+        }
+        long time = parseNumber(from, to);
+        if(time == Long.MIN_VALUE){
+            return INVALID;
+        }
+
+        //username, anything after it is ignored
+        from = skipBlanks(to, end);
+        to = tokenEnd(from, end);
+        if(from == to){
+            return null;
+        }
+        if(terminal == 0){
+            return INVALID;
+        }
+        int userId = intern(from, to);
+
+        return new Record((int) terminal, terminal > 0, userId, time);
+    }
+
+    private int skipBlanks(int i, int end){
+        while(i < end && (buffer[i] == ' ' || buffer[i] == '\t')){
+            i++;
+        }
+        return i;
+    }
+
+    private int tokenEnd(int i, int end){
+        while(i < end && buffer[i] != ' ' && buffer[i] != '\t'){
+            i++;
+        }
+        return i;
+    }
+
+    /*
+     * Parses a signed decimal number from buffer[from, to).
+     * Returns Long.MIN_VALUE if the bytes are not a number or it overflows.
+     */
+    private long parseNumber(int from, int to){
+        if(from == to){
+            return Long.MIN_VALUE;
+        }
+
+        boolean negative = false;
+        if(buffer[from] == '-' || buffer[from] == '+'){
+            negative = buffer[from] == '-';
+            from++;
+            if(from == to){
+                return Long.MIN_VALUE;
+            }
+        }
+
+        long value = 0;
+        for(int i = from; i < to; i++){
+            int digit = buffer[i] - '0';
+            if(digit < 0 || digit > 9 || value > (Long.MAX_VALUE - digit) / 10){
+                return Long.MIN_VALUE;
+            }
+            value = value * 10 + digit;
+        }
+        return negative ? -value : value;
+    }
+
+    /*
+     * Returns the user id of the username stored in buffer[from, to),
+     * decoding and looking it up only the first time it is seen.
+     */
+    private int intern(int from, int to){
+        int hash = 1;
+        for(int i = from; i < to; i++){
+            hash = 31 * hash + buffer[i];
+        }
+
+        int mask = nameBytes.length - 1;
+        int slot = (hash ^ (hash >>> 16)) & mask;
+        while(nameBytes[slot] != null){
+            byte[] bytes = nameBytes[slot];
+            if(Arrays.equals(bytes, 0, bytes.length, buffer, from, to)){
+                return nameIds[slot];
+            }
+            slot = (slot + 1) & mask;
+        }
+
+        int id = UserTable.idOf(new String(buffer, from, to - from, StandardCharsets.UTF_8));
+        nameBytes[slot] = Arrays.copyOfRange(buffer, from, to);
+        nameIds[slot] = id;
+        nameCount++;
+
+        //keep the table at most half full
+        if(nameCount * 2 > nameBytes.length){
+            rehash();
+        }
+        return id;
+    }
+
+    private void rehash(){
+        byte[][] oldBytes = nameBytes;
+        int[] oldIds = nameIds;
+        nameBytes = new byte[oldBytes.length * 2][];
+        nameIds = new int[oldBytes.length * 2];
+
+        int mask = nameBytes.length - 1;
+        for(int i = 0; i < oldBytes.length; i++){
+            if(oldBytes[i] == null){
+                continue;
+            }
+            int hash = 1;
+            for(byte b : oldBytes[i]){
+                hash = 31 * hash + b;
+            }
+            int slot = (hash ^ (hash >>> 16)) & mask;
+            while(nameBytes[slot] != null){
+                slot = (slot + 1) & mask;
+            }
+            nameBytes[slot] = oldBytes[i];
+            nameIds[slot] = oldIds[i];
+        }
+    }
+}
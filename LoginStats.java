@@ -1,11 +1,24 @@
 package project3;
 
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
 import java.io.File;
-import java.io.FileNotFoundException;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.io.Writer;
+import java.util.ArrayDeque;
 import java.util.NoSuchElementException;
 import java.util.Scanner;
-import java.util.Date;
 import java.util.ArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import javax.management.JMException;
 
 /**
 * This class is responsible for:
@@ -20,6 +33,12 @@ public class LoginStats{
     // to store session records
     private static ArrayList<Session> sessions = new ArrayList<>(); 
 
+    // formats the sessions printed by the commands
+    private static final SessionFormatter SESSION_FORMATTER = new SessionFormatter();
+
+    // batch commands that may be queued or running at the same time
+    private static final int BATCH_WINDOW = 4096;
+
 
     /**
      * The main() method of this program
@@ -52,70 +71,179 @@ public class LoginStats{
             System.exit(1);
         }
 
-        //open the file for reading
-        Scanner logFile = null;
+        //with --follow the file is watched for new lines after it has been read
+        //with --batch the commands are read from a file, or from stdin for "-"
+        //with --cache N the results for the N most recently queried users are kept;
+        //without it nothing is cached
+        //with --snapshot FILE the records are loaded from FILE if it was written for the log
+        //as it is now, otherwise the log is read and FILE is written for the next start
+        //with --report a summary of every user is printed instead of running commands
+        //with --stats the metrics are collected for the stats command
+        //with --jmx the metrics are collected and registered with the platform MBean server
+        //with --offheap the records are kept outside the heap, for logs too large for it;
+        //they must fit in -XX:MaxDirectMemorySize, which defaults to the maximum heap size
+        //with --columnar the records are kept in primitive columns, which take less heap
+        boolean follow = false;
+        boolean offHeap = false;
+        boolean columnar = false;
+        boolean report = false;
+        boolean stats = false;
+        boolean jmx = false;
+        String batchFile = null;
+        File snapshotFile = null;
+        int cacheSize = 0;
+        for (int i = 1; i < args.length; i++) {
+            if (args[i].equals("--follow")) {
+                follow = true;
+            } else if (args[i].equals("--report")) {
+                report = true;
+            } else if (args[i].equals("--stats")) {
+                stats = true;
+            } else if (args[i].equals("--jmx")) {
+                jmx = true;
+            } else if (args[i].equals("--offheap")) {
+                offHeap = true;
+            } else if (args[i].equals("--columnar")) {
+                columnar = true;
+            } else if (args[i].equals("--batch") && i + 1 < args.length) {
+                batchFile = args[++i];
+            } else if (args[i].equals("--snapshot") && i + 1 < args.length) {
+                snapshotFile = new File(args[++i]);
+            } else if (args[i].equals("--cache") && i + 1 < args.length) {
+                try {
+                    cacheSize = Integer.parseInt(args[++i]);
+                } catch (NumberFormatException e) {
+                    cacheSize = -1;
+                }
+                if (cacheSize < 0) {
+                    System.err.println("Usage Error: --cache expects a number of users, not " + args[i] + "\n");
+                    System.exit(1);
+                }
+            } else {
+                System.err.println("Usage Error: unknown option " + args[i] + "\n");
+                System.exit(1);
+            }
+        }
+        if (follow && report) {
+            System.err.println("Usage Error: --report cannot be used with --follow.\n");
+            System.exit(1);
+        }
+        if (offHeap && (follow || report || snapshotFile != null)) {
+            System.err.println("Usage Error: --offheap cannot be used with --follow, --report or --snapshot.\n");
+            System.exit(1);
+        }
+        if (columnar && (offHeap || follow || report || snapshotFile != null)) {
+            System.err.println("Usage Error: --columnar cannot be used with --offheap, --follow, --report or --snapshot.\n");
+            System.exit(1);
+        }
+
+        //the counters of the Metrics class can be watched over JMX
+        if (stats || jmx) {
+            Metrics.enable();
+        }
+        if (jmx) {
+            try {
+                Metrics.register();
+            } catch (JMException e) {
+                System.err.println("Warning: the metrics could not be registered with JMX.");
+            }
+        }
+
+        //read file and save it in list of records
+        SessionQueries queries;
+        //caused by an incomplete or miss-formatted line in the input file
+        LogReader.MalformedLineHandler printLine = (lineNumber, line) -> System.err.println(line);
 
         try {
-            logFile = new Scanner (userLog);
-        } catch (FileNotFoundException e) {
+            if (follow) {
+                //queries run against snapshots while the follower keeps adding records
+                ConcurrentRecordList list = new ConcurrentRecordList();
+                queries = list;
+
+                //the follower does the first read itself, so no line is read twice or missed
+                LogFollower follower = new LogFollower(userLog.toPath(), list::add, printLine);
+                follower.poll();
+
+                Thread followerThread = new Thread(follower, "log-follower");
+                followerThread.setDaemon(true);
+                followerThread.start();
+            } else if (offHeap) {
+                //the log is read line by line; records out of order are sorted and merged
+                //in batches, so no more than one batch of them piles up on the heap
+                OffHeapRecordStore store = new OffHeapRecordStore();
+                try (LogReader reader = new LogReader(new FileInputStream(userLog), printLine)) {
+                    Record record;
+                    while ((record = reader.next()) != null) {
+                        store.add(record);
+                    }
+                }
+                queries = store;
+            } else if (columnar) {
+                //records that arrive out of order are sorted and merged once, before the first query
+                ColumnarRecordStore store = new ColumnarRecordStore();
+                try (LogReader reader = new LogReader(new FileInputStream(userLog), printLine)) {
+                    Record record;
+                    while ((record = reader.next()) != null) {
+                        store.add(record);
+                    }
+                }
+                queries = store;
+            } else {
+                RecordList list = new RecordList(cacheSize);
+                load(userLog, snapshotFile, list, printLine);
+                queries = list;
+
+                //report mode
+                if (report) {
+                    Writer out = new BufferedWriter(new OutputStreamWriter(System.out), 1 << 16);
+                    writeReport(list, out);
+                    out.flush();
+                    return;
+                }
+            }
+        } catch (IOException e) {
             System.err.println("Error: the file "+userLog.getAbsolutePath()+
-                               " cannot be opened for reading.\n");
+                               " could not be read.\n");
             System.exit(1);
+            return;
         }
 
-        //read file and save it in list of records
-        RecordList list = new RecordList();
-        String line;
-        Scanner parseLine;
-        int inputTerminal;
-        long inputTime;
-        String inputUsername;
-        Record current;
-
-        while (logFile.hasNextLine()) {
-            line = logFile.nextLine();
-            parseLine = new Scanner(line);
-            parseLine.useDelimiter(" ");
 
+        //batch mode
+        if (batchFile != null) {
             try {
-            inputTerminal = Integer.parseInt(parseLine.next().trim()); // parse to int
-            inputTime = Long.parseLong(parseLine.next().trim()); // parse to long
-            inputUsername = parseLine.next().trim();
-            
-            boolean isLoggedIn = inputTerminal > 0;
-            Date dateTime = new Date(inputTime);
-
-            current = new Record(inputTerminal, isLoggedIn, inputUsername, dateTime);
-            list.add(current);
-            }
-            catch (NoSuchElementException ex ) {
-                //caused by an incomplete or miss-formatted line in the input file
-                System.err.println(line);
-                continue;
-            }
-            catch (IllegalArgumentException ex ) {
-                //ignore this exception and skip to the next line
+                InputStream commands = batchFile.equals("-") ? System.in : new FileInputStream(batchFile);
+                runBatch(queries, new BufferedReader(new InputStreamReader(commands)),
+                         new BufferedWriter(new OutputStreamWriter(System.out), 1 << 16));
+            } catch (IOException e) {
+                System.err.println("Error: the batch file "+batchFile+" could not be read.\n");
+                System.exit(1);
             }
+            return;
         }
 
 
         //interactive mode
         Scanner input = new Scanner(System.in);
         String userValue = "";
+        //all output goes through one buffer that is flushed once per command
+        PrintWriter out = new PrintWriter(new BufferedWriter(new OutputStreamWriter(System.out), 1 << 16));
         
-        System.out.println("Welcome to Login Stats!\n");
-        System.out.println("Available commands: ");
-        System.out.println("  first USERNAME   -   retrieves first login session for the USER");
-        System.out.println("  last USERNAME    -   retrieves last login session for the USER");
-        System.out.println("  total USERNAME   -   retrieves total amount of time logged in for the USER");
-        System.out.println("  all USERNAME     -   retrieves list of all login sessions for the USER");
-        System.out.println("  quit             -   terminates this program\n");
+        out.println("Welcome to Login Stats!\n");
+        out.println("Available commands: ");
+        out.println("  first USERNAME   -   retrieves first login session for the USER");
+        out.println("  last USERNAME    -   retrieves last login session for the USER");
+        out.println("  total USERNAME   -   retrieves total amount of time logged in for the USER");
+        out.println("  all USERNAME     -   retrieves list of all login sessions for the USER");
+        out.println("  stats            -   shows counters and command latencies of this program");
+        out.println("  quit             -   terminates this program\n");
 
 
 
         do {
             
-            System.out.println();
+            out.println();
+            out.flush();
             //get value from the user
             userValue = input.nextLine().trim();
     
@@ -123,67 +251,242 @@ public class LoginStats{
                 break;
             }
                 
-            int spaceIndex = userValue.indexOf(' ');
+            out.print(execute(queries, userValue));
 
-            //check if there's a space separating the command and username
-            if (spaceIndex == -1) {
-                System.out.println("Error: There must be a username after the 'first' or 'last' command.");
-            } else {
-                String command = userValue.substring(0, spaceIndex).toLowerCase().trim();
-                String username = userValue.substring(spaceIndex + 1).trim();
-
-                //handle the "first" command
-                if (command.equals("first")) {                       
-                    try {
-                        Session firstSession = list.getFirstSession(username);
-                       System.out.println(firstSession);
-                   } catch (NoSuchElementException e) {
-                       System.out.println("No user matching " + username + " found.");
-                   }
-               } 
-               //handle the "last" command
-               else if (command.equals("last")) {
-                   try {
-                       Session lastSession = list.getLastSession(username);
-                       System.out.println(lastSession);
-                   } catch (NoSuchElementException e){
-                       System.out.println("No user matching " + username + " found.");
-                   } 
+        } while (true);
+
+    out.flush();
+    input.close();
+
+    }
+
+
+
+
+    /**
+    * loads the records of the log into the list, from the snapshot if there
+    * is one that was written for the log as it is now
+    *
+    * a snapshot that cannot be read, or that belongs to another log or an
+    * older state of this one, is ignored; after reading the log a new
+    * snapshot is written
+    *
+    * @param userLog the log file
+    * @param snapshotFile the snapshot file, or null to always read the log
+    * @param list the list to load the records into
+    * @param handler receives the malformed lines of the log
+    * @throws IOException if the log cannot be read
+    */
+    private static void load(File userLog, File snapshotFile, RecordList list,
+                             LogReader.MalformedLineHandler handler) throws IOException {
+        //taken before reading, so lines appended while loading make the snapshot stale
+        RecordSnapshot.Source source = RecordSnapshot.Source.of(userLog.toPath());
+        if (snapshotFile != null && snapshotFile.exists()) {
+            try {
+                RecordSnapshot.read(snapshotFile.toPath(), list, source);
+                return;
+            } catch (IOException e) {
+                System.err.println("Warning: " + e.getMessage() + " Reading the log instead.");
+                list.clear();
+            }
+        }
+
+        new MappedLogLoader().load(userLog.toPath(), list, handler);
+
+        if (snapshotFile != null) {
+            try {
+                RecordSnapshot.write(list, snapshotFile.toPath(), source);
+            } catch (IOException e) {
+                System.err.println("Warning: the snapshot "+snapshotFile.getAbsolutePath()+
+                                   " could not be written.");
+            }
+        }
+    }
+
+
+    /**
+    * runs a single query command and returns its result
+    *
+    * @param list the records to query
+    * @param userValue the command line entered by the user, e.g. "first joanna"
+    * @return the text to print for the command, one or more lines
+    */
+    private static String execute(SessionQueries list, String userValue) {
+        StringBuilder out = new StringBuilder();
+        if (userValue.equalsIgnoreCase("stats")) {
+            if (!Metrics.isEnabled()) {
+                return "No metrics are collected, start the program with --stats or --jmx.\n";
+            }
+            return Metrics.report(out).toString();
+        }
+
+        //every command is timed, invalid ones together
+        long start = System.nanoTime();
+        String metric = "invalid";
+        int spaceIndex = userValue.indexOf(' ');
+
+        //check if there's a space separating the command and username
+        if (spaceIndex == -1) {
+            out.append("Error: There must be a username after the 'first' or 'last' command.").append('\n');
+        } else {
+            String command = userValue.substring(0, spaceIndex).toLowerCase().trim();
+            String username = userValue.substring(spaceIndex + 1).trim();
+            if (command.equals("first") || command.equals("last")
+                || command.equals("all") || command.equals("total")) {
+                metric = command;
+            }
+
+            //handle the "first" command
+            if (command.equals("first")) {                       
+                try {
+                    Session firstSession = list.getFirstSession(username);
+                   SESSION_FORMATTER.format(firstSession, out).append('\n');
+               } catch (NoSuchElementException e) {
+                   out.append("No user matching " + username + " found.").append('\n');
+               }
+           } 
+           //handle the "last" command
+           else if (command.equals("last")) {
+               try {
+                   Session lastSession = list.getLastSession(username);
+                   SESSION_FORMATTER.format(lastSession, out).append('\n');
+               } catch (NoSuchElementException e){
+                   out.append("No user matching " + username + " found.").append('\n');
                } 
-                //handle the "all" command
-               else if (command.equals("all")) {
-                   try{
-                        SortedLinkedList<Session> allSessions = list.getAllSessions(username);
-                        for (Session session : allSessions) {
-                            System.out.println(session);
-                            System.out.println();
-                        }
-                   } catch (NoSuchElementException e){
-                       System.out.println("No user matching " + username + " found.");
-                   } 
+           } 
+            //handle the "all" command
+           else if (command.equals("all")) {
+               try{
+                    SortedLinkedList<Session> allSessions = list.getAllSessions(username);
+                    for (Session session : allSessions) {
+                        SESSION_FORMATTER.format(session, out).append('\n');
+                        out.append('\n');
+                    }
+               } catch (NoSuchElementException e){
+                   out.append("No user matching " + username + " found.").append('\n');
                } 
-                //handles the "total" command
-               else if (command.equals("total")) {
-                   try {
-                       long sessionTotalTime = list.getTotalTime(username);
-                       System.out.println(username + ", total duration " + formatDuration(sessionTotalTime));
-                   } catch (NoSuchElementException e){
-                       System.out.println("No user matching " + username + " found.");
-                   } 
+           } 
+            //handles the "total" command
+           else if (command.equals("total")) {
+               try {
+                   long sessionTotalTime = list.getTotalTime(username);
+                   out.append(username + ", total duration " + formatDuration(sessionTotalTime)).append('\n');
+               } catch (NoSuchElementException e){
+                   out.append("No user matching " + username + " found.").append('\n');
                } 
-               //invalid command
-               else {
-                   System.out.println("Error: This is not a valid query. Try again.");
+           } 
+           //invalid command
+           else {
+               out.append("Error: This is not a valid query. Try again.").append('\n');
+            }
+        }
+        Metrics.command(metric, System.nanoTime() - start);
+        return out.toString();
+    }
+
+
+    /**
+    * runs the commands read from in on a pool of worker threads and writes
+    * their results to out in the order the commands were read
+    *
+    * reading stops at the end of the input or at a "quit" command
+    *
+    * @param list the records to query, must not change while the batch runs
+    * @param in the commands, one per line
+    * @param out where to write the results
+    * @throws IOException if reading the commands or writing the results fails
+    */
+    private static void runBatch(SessionQueries list, BufferedReader in, Writer out) throws IOException {
+        ExecutorService workers = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+        ArrayDeque<Future<String>> pending = new ArrayDeque<>();
+
+        try {
+            String line;
+            while ((line = in.readLine()) != null) {
+                String userValue = line.trim();
+                if (userValue.isEmpty()) {
+                    continue;
+                }
+                if (userValue.equalsIgnoreCase("quit")) {
+                    break;
+                }
+
+                pending.addLast(workers.submit(() -> execute(list, userValue)));
+                //write finished results so the queue does not grow with the input
+                if (pending.size() >= BATCH_WINDOW) {
+                    out.write(result(pending.pollFirst()));
                 }
             }
 
-        } while (true);
+            while (!pending.isEmpty()) {
+                out.write(result(pending.pollFirst()));
+            }
+            out.flush();
+        } finally {
+            workers.shutdownNow();
+        }
+    }
 
-    input.close();
 
+    /**
+    * writes the summary of every user, ordered by username
+    *
+    * @param list the records to summarize
+    * @param out where to write the report
+    * @throws IOException if writing the report fails
+    */
+    private static void writeReport(RecordList list, Writer out) throws IOException {
+        StringBuilder entry = new StringBuilder();
+        for (UserReport report : list.getUserReports()) {
+            entry.setLength(0);
+            entry.append(report.getUsername())
+                .append(", sessions ").append(report.getSessionCount())
+                .append(", total duration ").append(formatDuration(report.getTotalTime()))
+                .append(", without overlaps ").append(formatDuration(report.getMergedTime()))
+                .append(", max concurrent ").append(report.getMaxConcurrent());
+
+            entry.append("\n    first login: ");
+            if (report.getFirstSession() == null) {
+                entry.append("none");
+            } else {
+                SESSION_FORMATTER.formatTime(report.getFirstSession().getLoginTimeMillis(), entry);
+            }
+            entry.append("\n    last login: ");
+            if (report.getLastSession() == null) {
+                entry.append("none");
+            } else {
+                SESSION_FORMATTER.formatTime(report.getLastSession().getLoginTimeMillis(), entry);
+            }
+            out.write(entry.append('\n').toString());
+        }
+
+        SessionSweep all = list.getSessionSweep();
+        entry.setLength(0);
+        entry.append("peak of ").append(all.getPeakSessions()).append(" concurrent sessions");
+        if (all.getPeakSessions() > 0) {
+            entry.append(" at ");
+            SESSION_FORMATTER.formatTime(all.getPeakTime(), entry);
+        }
+        out.write(entry.append('\n').toString());
     }
 
 
+    /**
+    * waits for a batch command to finish and returns its result
+    *
+    * @param command the submitted command
+    * @return the text to print for the command
+    */
+    private static String result(Future<String> command) {
+        try {
+            return command.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for a batch command.", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("A batch command failed.", e.getCause());
+        }
+    }
 
 
     /**
@@ -198,7 +501,7 @@ public class LoginStats{
         long hours = durationMillis / (60 * 60 * 1000) % 24;
         long days = durationMillis / (24 * 60 * 60 * 1000);
 
-        return String.format("%dd %dh %dm %ds", days, hours, minutes, seconds);
+        return days + "d " + hours + "h " + minutes + "m " + seconds + "s";
     
 
     }
@@ -0,0 +1,309 @@
+package project3;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveTask;
+
+/**
+* This class loads a log file into a RecordList using all available cores.
+*
+* The file is memory-mapped and split on line boundaries into chunks.
+* Every chunk is parsed by its own LogReader in a fork-join pool and sorted
+* into a run of records. The task that parsed two halves of the chunks
+* merges their runs, so the runs are merged pairwise in parallel and the
+* last merge leaves one sorted run. That run is handed to the list in a
+* single bulk add, which only has to check that it is sorted before it
+* splices it into the list in one pass.
+*
+* Parsing is not zero-copy: a LogReader parses from a byte array, so the
+* mapped bytes are copied into its buffer, 64 KB at a time. Mapping still
+* saves reading the file through a stream, and no chunk is held in memory
+* as a whole.
+*
+* @author Carsten Kaiser
+*/
+public class MappedLogLoader{
+
+    private static final long DEFAULT_CHUNK_SIZE = 64L << 20;
+    // a single mapping cannot exceed Integer.MAX_VALUE bytes
+    private static final long MAX_CHUNK_SIZE = 1L << 30;
+
+    private ForkJoinPool pool;
+    private long chunkSize;
+
+    /**
+    * default constructor that creates a loader using the common
+    * fork-join pool and 64 MB chunks
+    */
+    public MappedLogLoader(){
+        this(ForkJoinPool.commonPool(), DEFAULT_CHUNK_SIZE);
+    }
+
+    /**
+    * two-parameter constructor that creates a loader using the given pool and chunk size
+    *
+    * @throws IllegalArgumentException if the pool is null or the chunk size
+    * is not between 1 byte and 1 GB
+    *
+    * @param pool the pool that parses the chunks
+    * @param chunkSize the approximate number of bytes in one chunk
+    */
+    public MappedLogLoader(ForkJoinPool pool, long chunkSize){
+        if(pool == null){
+            throw new IllegalArgumentException("Pool cannot be null.");
+        }
+        if(chunkSize <= 0 || chunkSize > MAX_CHUNK_SIZE){
+            throw new IllegalArgumentException("Invalid chunk size: " + chunkSize);
+        }
+        this.pool = pool;
+        this.chunkSize = chunkSize;
+    }
+
+    /**
+    * loads all valid records of the file into the list
+    *
+    * malformed lines are reported to the handler in file order,
+    * on the calling thread, after all chunks have been parsed
+    *
+    * @param file the log file
+    * @param list the list to add the records to
+    * @param handler receives the malformed lines, may be null to ignore them
+    * @return the number of records added
+    * @throws IOException if the file cannot be mapped or read
+    */
+    public int load(Path file, RecordList list, LogReader.MalformedLineHandler handler) throws IOException{
+        List<Chunk> chunks;
+        List<Record> records;
+
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            chunks = split(channel);
+            records = pool.invoke(new ParseTask(channel, chunks, 0, chunks.size()));
+        } catch (ChunkException ex) {
+            throw ex.getCause();
+        }
+
+        //report malformed lines with their line number in the whole file
+        long linesBefore = 0;
+        for(Chunk chunk : chunks){
+            if(handler != null){
+                for(int i = 0; i < chunk.malformedLines.size(); i++){
+                    handler.malformedLine(linesBefore + chunk.malformedLineNumbers.get(i),
+                        chunk.malformedLines.get(i));
+                }
+            }
+            linesBefore += chunk.lineCount;
+        }
+
+        return list.addAll(records);
+    }
+
+    /*
+     * Splits the file into chunks of about chunkSize bytes that each end
+     * right after a line feed (or at the end of the file).
+     */
+    private List<Chunk> split(FileChannel channel) throws IOException{
+        List<Chunk> chunks = new ArrayList<>();
+        long size = channel.size();
+        long start = 0;
+        ByteBuffer probe = ByteBuffer.allocate(4096);
+
+        while(start < size){
+            long end = Math.min(start + chunkSize, size);
+
+            //move the end forward to the next line boundary
+            while(end < size && !endsLine(channel, end - 1, probe)){
+                probe.clear();
+                int read = channel.read(probe, end);
+                int newline = -1;
+                for(int i = 0; i < read; i++){
+                    if(probe.get(i) == '\n'){
+                        newline = i;
+                        break;
+                    }
+                }
+                end = (newline < 0) ? Math.min(end + read, size) : end + newline + 1;
+                if(end - start > MAX_CHUNK_SIZE){
+                    throw new IOException("Line too long near byte " + end);
+                }
+            }
+
+            chunks.add(new Chunk(start, end - start));
+            start = end;
+        }
+        return chunks;
+    }
+
+    /* Returns true if the byte at the given position is a line feed. */
+    private boolean endsLine(FileChannel channel, long position, ByteBuffer probe) throws IOException{
+        probe.clear().limit(1);
+        return channel.read(probe, position) == 1 && probe.get(0) == '\n';
+    }
+
+    /*
+     * Merges two sorted runs into one. On equal times the record of the
+     * first run goes first, so the result keeps the file order of the
+     * records, as a stable sort of the whole file would.
+     */
+    private static List<Record> merge(List<Record> first, List<Record> second){
+        if(first.isEmpty()){
+            return second;
+        }
+        if(second.isEmpty()){
+            return first;
+        }
+
+        List<Record> merged = new ArrayList<>(first.size() + second.size());
+        int i = 0;
+        int j = 0;
+        while(i < first.size() && j < second.size()){
+            if(second.get(j).compareTo(first.get(i)) < 0){
+                merged.add(second.get(j++));
+            } else {
+                merged.add(first.get(i++));
+            }
+        }
+        merged.addAll(first.subList(i, first.size()));
+        merged.addAll(second.subList(j, second.size()));
+        return merged;
+    }
+
+    /*
+     * A range of the file and the records parsed from it.
+     */
+    private static class Chunk {
+        final long offset;
+        final long length;
+
+        List<Record> records = new ArrayList<>();
+        List<Long> malformedLineNumbers = new ArrayList<>();
+        List<String> malformedLines = new ArrayList<>();
+        long lineCount;
+
+        Chunk(long offset, long length){
+            this.offset = offset;
+            this.length = length;
+        }
+    }
+
+    /*
+     * Parses a range of chunks, splitting it in half until only one is left,
+     * and returns the records of the range as one sorted run.
+     */
+    private static class ParseTask extends RecursiveTask<List<Record>> {
+        private static final long serialVersionUID = 1L;
+
+        private final FileChannel channel;
+        private final List<Chunk> chunks;
+        private final int from;
+        private final int to;
+
+        ParseTask(FileChannel channel, List<Chunk> chunks, int from, int to){
+            this.channel = channel;
+            this.chunks = chunks;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected List<Record> compute(){
+            if(to - from > 1){
+                int middle = (from + to) >>> 1;
+                ParseTask left = new ParseTask(channel, chunks, from, middle);
+                ParseTask right = new ParseTask(channel, chunks, middle, to);
+                ForkJoinTask.invokeAll(left, right);
+                return merge(left.join(), right.join());
+            }
+            if(to == from){
+                return new ArrayList<>();
+            }
+
+            Chunk chunk = chunks.get(from);
+            try {
+                parse(chunk);
+            } catch (IOException ex) {
+                throw new ChunkException(ex);
+            }
+            //the chunk only keeps its malformed lines
+            List<Record> records = chunk.records;
+            chunk.records = null;
+            return records;
+        }
+
+        private void parse(Chunk chunk) throws IOException{
+            ByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, chunk.offset, chunk.length);
+            LogReader reader = new LogReader(new ByteBufferInputStream(mapped), (lineNumber, line) -> {
+                chunk.malformedLineNumbers.add(lineNumber);
+                chunk.malformedLines.add(line);
+            });
+
+            Record record;
+            boolean sorted = true;
+            while((record = reader.next()) != null){
+                List<Record> records = chunk.records;
+                if(sorted && !records.isEmpty() && records.get(records.size() - 1).compareTo(record) > 0){
+                    sorted = false;
+                }
+                records.add(record);
+            }
+            chunk.lineCount = reader.getLineNumber();
+
+            //stable, and close to linear for mostly sorted logs
+            if(!sorted){
+                chunk.records.sort(null);
+            }
+        }
+    }
+
+    /*
+     * Carries an IOException out of a fork-join task.
+     */
+    private static class ChunkException extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        ChunkException(IOException cause){
+            super(cause);
+        }
+
+        @Override
+        public synchronized IOException getCause(){
+            return (IOException) super.getCause();
+        }
+    }
+
+    /*
+     * Reads the remaining bytes of a buffer.
+     */
+    private static class ByteBufferInputStream extends InputStream {
+        private final ByteBuffer buffer;
+
+        ByteBufferInputStream(ByteBuffer buffer){
+            this.buffer = buffer;
+        }
+
+        @Override
+        public int read(){
+            return buffer.hasRemaining() ? (buffer.get() & 0xff) : -1;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len){
+            if(len == 0){
+                return 0;
+            }
+            if(!buffer.hasRemaining()){
+                return -1;
+            }
+            int n = Math.min(len, buffer.remaining());
+            buffer.get(b, off, n);
+            return n;
+        }
+    }
+}
@@ -0,0 +1,270 @@
+package project3;
+
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+* This class collects counters from the hot paths of the program: lines
+* parsed and rejected while loading, comparisons and index nodes visited by
+* the inserts into sorted lists, records looked at by the queries that scan,
+* and the latency of every command.
+*
+* The counters are LongAdders and the distributions are Histograms, so
+* the threads that load and query can count at the same time without
+* contending on a lock. The counters are global; register makes them
+* visible over JMX.
+*
+* Counting is off until enable is called, and until then every counter
+* returns at once, so the hot paths pay for no more than a check of a
+* flag. Inserts are only counted for the lists that ask for it, which are
+* the records of a RecordList.
+*
+* @author Carsten Kaiser
+*/
+public final class Metrics{
+
+    /** the name the metrics are registered under */
+    public static final String OBJECT_NAME = "project3:type=Metrics";
+
+    private static final LongAdder linesParsed = new LongAdder();
+    private static final LongAdder linesRejected = new LongAdder();
+    private static final LongAdder inserts = new LongAdder();
+    private static final LongAdder insertComparisons = new LongAdder();
+    private static final LongAdder insertNodesVisited = new LongAdder();
+    // records looked at per scanning query
+    private static final Histogram scans = new Histogram();
+    // latency per command, in nanoseconds
+    private static final Map<String, Histogram> commands = new ConcurrentHashMap<>();
+    private static volatile boolean enabled;
+
+    private Metrics(){
+    }
+
+    /**
+    * turns counting on; it cannot be turned off again
+    */
+    public static void enable(){
+        enabled = true;
+    }
+
+    /**
+    * returns whether counting is on
+    *
+    * @return true if the counters count
+    */
+    public static boolean isEnabled(){
+        return enabled;
+    }
+
+    /**
+    * counts a log line that was turned into a record
+    */
+    public static void lineParsed(){
+        if(!enabled){
+            return;
+        }
+        linesParsed.increment();
+    }
+
+    /**
+    * counts a malformed log line
+    */
+    public static void lineRejected(){
+        if(!enabled){
+            return;
+        }
+        linesRejected.increment();
+    }
+
+    /**
+    * counts an insert into the records of a RecordList
+    *
+    * @param comparisons the comparisons the insert made
+    * @param nodesVisited the index nodes it visited to find its place
+    */
+    public static void insert(int comparisons, int nodesVisited){
+        if(!enabled){
+            return;
+        }
+        inserts.increment();
+        insertComparisons.add(comparisons);
+        insertNodesVisited.add(nodesVisited);
+    }
+
+    /**
+    * counts a batch of inserts into the records of a RecordList
+    *
+    * @param count the number of elements inserted
+    * @param comparisons the comparisons made after sorting the batch, to order
+    * equal elements and to merge the batch in
+    */
+    public static void bulkInsert(int count, long comparisons){
+        if(!enabled){
+            return;
+        }
+        inserts.add(count);
+        insertComparisons.add(comparisons);
+    }
+
+    /**
+    * counts a query that scanned records
+    *
+    * @param records the number of records the query looked at
+    */
+    public static void scan(long records){
+        if(!enabled){
+            return;
+        }
+        scans.record(records);
+    }
+
+    /**
+    * counts a command and its latency
+    *
+    * @param command the name of the command
+    * @param nanos how long the command took, in nanoseconds
+    */
+    public static void command(String command, long nanos){
+        if(!enabled){
+            return;
+        }
+        commands.computeIfAbsent(command, k -> new Histogram()).record(nanos);
+    }
+
+    /**
+    * sets all counters back to zero
+    */
+    public static void reset(){
+        linesParsed.reset();
+        linesRejected.reset();
+        inserts.reset();
+        insertComparisons.reset();
+        insertNodesVisited.reset();
+        scans.reset();
+        commands.clear();
+    }
+
+    /**
+    * registers the metrics with the platform MBean server
+    *
+    * @throws JMException if the metrics cannot be registered
+    */
+    public static synchronized void register() throws JMException{
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        ObjectName name = new ObjectName(OBJECT_NAME);
+        if(!server.isRegistered(name)){
+            server.registerMBean(new Bean(), name);
+        }
+    }
+
+    /**
+    * appends a summary of all counters, one line each
+    *
+    * @param out the builder to append to
+    * @return out
+    */
+    public static StringBuilder report(StringBuilder out){
+        out.append("lines parsed ").append(linesParsed.sum())
+            .append(", rejected ").append(linesRejected.sum()).append('\n');
+
+        out.append("inserts ").append(inserts.sum())
+            .append(", comparisons ").append(insertComparisons.sum())
+            .append(", index nodes visited ").append(insertNodesVisited.sum()).append('\n');
+
+        out.append("scans ").append(scans.getCount())
+            .append(", records per scan: mean ").append(Math.round(scans.getMean()))
+            .append(", p99 ").append(scans.getValueAtPercentile(99))
+            .append(", max ").append(scans.getMax()).append('\n');
+
+        for(Map.Entry<String, Histogram> entry : new TreeMap<>(commands).entrySet()){
+            Histogram latency = entry.getValue();
+            out.append("command ").append(entry.getKey())
+                .append(": count ").append(latency.getCount())
+                .append(", latency p50 ").append(micros(latency.getValueAtPercentile(50)))
+                .append(" us, p99 ").append(micros(latency.getValueAtPercentile(99)))
+                .append(" us, max ").append(micros(latency.getMax())).append(" us").append('\n');
+        }
+        return out;
+    }
+
+    private static long micros(long nanos){
+        return TimeUnit.NANOSECONDS.toMicros(nanos);
+    }
+
+    /* The JMX view of the counters. */
+    private static class Bean implements MetricsMXBean {
+
+        @Override
+        public long getLinesParsed(){
+            return linesParsed.sum();
+        }
+
+        @Override
+        public long getLinesRejected(){
+            return linesRejected.sum();
+        }
+
+        @Override
+        public long getInserts(){
+            return inserts.sum();
+        }
+
+        @Override
+        public long getInsertComparisons(){
+            return insertComparisons.sum();
+        }
+
+        @Override
+        public long getInsertNodesVisited(){
+            return insertNodesVisited.sum();
+        }
+
+        @Override
+        public long getScans(){
+            return scans.getCount();
+        }
+
+        @Override
+        public double getMeanRecordsScanned(){
+            return scans.getMean();
+        }
+
+        @Override
+        public long getMaxRecordsScanned(){
+            return scans.getMax();
+        }
+
+        @Override
+        public Map<String, Long> getCommandCounts(){
+            Map<String, Long> counts = new TreeMap<>();
+            commands.forEach((command, latency) -> counts.put(command, latency.getCount()));
+            return counts;
+        }
+
+        @Override
+        public Map<String, Long> getCommandMedianMicros(){
+            Map<String, Long> medians = new TreeMap<>();
+            commands.forEach((command, latency) -> medians.put(command, micros(latency.getValueAtPercentile(50))));
+            return medians;
+        }
+
+        @Override
+        public Map<String, Long> getCommand99thPercentileMicros(){
+            Map<String, Long> tails = new TreeMap<>();
+            commands.forEach((command, latency) -> tails.put(command, micros(latency.getValueAtPercentile(99))));
+            return tails;
+        }
+
+        @Override
+        public void reset(){
+            Metrics.reset();
+        }
+    }
+}
@@ -0,0 +1,83 @@
+package project3;
+
+import java.util.Map;
+
+/**
+* This interface is the JMX view of the Metrics, registered as
+* project3:type=Metrics. Times are in microseconds.
+*
+* @author Carsten Kaiser
+*/
+public interface MetricsMXBean{
+
+    /**
+    * returns the number of log lines turned into records
+    * @return number of lines parsed
+    */
+    long getLinesParsed();
+
+    /**
+    * returns the number of log lines that were malformed
+    * @return number of lines rejected
+    */
+    long getLinesRejected();
+
+    /**
+    * returns the number of records inserted into RecordLists
+    * @return number of inserts
+    */
+    long getInserts();
+
+    /**
+    * returns the number of comparisons made by the inserts
+    * @return number of insert comparisons
+    */
+    long getInsertComparisons();
+
+    /**
+    * returns the number of index nodes the inserts visited to find their place
+    * @return number of nodes visited
+    */
+    long getInsertNodesVisited();
+
+    /**
+    * returns the number of queries that scanned records
+    * @return number of scans
+    */
+    long getScans();
+
+    /**
+    * returns the mean number of records a scanning query looked at
+    * @return mean records per scan
+    */
+    double getMeanRecordsScanned();
+
+    /**
+    * returns the most records a single query looked at
+    * @return largest number of records per scan
+    */
+    long getMaxRecordsScanned();
+
+    /**
+    * returns how many times each command ran
+    * @return the number of runs per command
+    */
+    Map<String, Long> getCommandCounts();
+
+    /**
+    * returns the median latency of each command
+    * @return median latency per command, in microseconds
+    */
+    Map<String, Long> getCommandMedianMicros();
+
+    /**
+    * returns the 99th percentile latency of each command
+    * @return 99th percentile latency per command, in microseconds
+    */
+    Map<String, Long> getCommand99thPercentileMicros();
+
+    /**
+    * sets all counters back to zero
+    */
+    void reset();
+}
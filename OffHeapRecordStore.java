@@ -0,0 +1,416 @@
+package project3;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+* This class stores login records outside of the Java heap, so that a very
+* large log does not make the garbage collector slower.
+*
+* Every record is a fixed-width entry of 24 bytes in a direct ByteBuffer:
+*     terminal * 2 + 1 for a login, terminal * 2 for a logout   (int)
+*     id of the username in the UserTable                      (int)
+*     time in milliseconds since the epoch                     (long)
+*     position of the previous entry of the same user, or -1   (int)
+*     position of the next entry of the same user, or -1       (int)
+* The entries are kept in time order in blocks of 4096 entries, and every
+* block but the last is full, so the entry at a position is found with a
+* shift and a mask. The links chain the entries of every user, so a query
+* only reads the entries of its user. The heap holds one small object per
+* block and the first and last position of every user, so heap usage does
+* not grow with the number of records.
+*
+* A record that is later than every stored one is appended to the last
+* block. Other records wait on the heap, up to 65536 of them, and are then
+* sorted and merged into the blocks in one pass from the back; a read
+* merges them as well. The links are built again by the first query after
+* a merge. Record objects are only created for the records a query looks
+* at.
+*
+* The blocks are allocated with ByteBuffer.allocateDirect, so the store can
+* hold no more than the JVM allows for direct buffers: -XX:MaxDirectMemorySize,
+* which defaults to the maximum heap size. Beyond that an add fails with an
+* OutOfMemoryError. Direct buffers are only freed when the garbage collector
+* collects them, so clear() gives the memory back some time later, not at
+* once.
+*
+* @author Carsten Kaiser
+*/
+public class OffHeapRecordStore implements SessionQueries{
+
+    private static final int ENTRY_SIZE = 24;
+    private static final int BLOCK_SHIFT = 12;
+    private static final int BLOCK_ENTRIES = 1 << BLOCK_SHIFT;
+    private static final int MAX_PENDING = 1 << 16;
+
+    // offsets of the fields within an entry
+    private static final int TERMINAL = 0;
+    private static final int USER = 4;
+    private static final int TIME = 8;
+    private static final int PREVIOUS = 16;
+    private static final int NEXT = 20;
+
+    private List<ByteBuffer> blocks = new ArrayList<>();
+    private int size;
+
+    // records that were not later than the last entry, merged in later
+    private List<Record> pending = new ArrayList<>();
+
+    // the entries before this position are linked to the entries of their user
+    private int linked;
+    // the first and last position of every user, by user id, -1 for none
+    private int[] firstOfUser = new int[0];
+    private int[] lastOfUser = new int[0];
+
+    /**
+    * default constructor that creates an empty store
+    */
+    public OffHeapRecordStore(){
+    }
+
+    /**
+    * adds the record to the store
+    *
+    * a record that is later than the last stored one is appended in
+    * constant time, others are merged into the entries later
+    *
+    * @param record the record to add
+    * @return true if the record was added, false if it is null
+    */
+    public boolean add(Record record){
+        if(record == null){
+            return false;
+        }
+
+        if(size > 0 && record.getTimeMillis() <= time(size - 1)){
+            pending.add(record);
+            if(pending.size() == MAX_PENDING){
+                merge();
+            }
+        } else {
+            set(size, record);
+            if(linked == size){
+                link(size);
+                linked++;
+            }
+            size++;
+        }
+        return true;
+    }
+
+    /**
+    * adds all records of the collection, sorting those that are out of
+    * order and merging them into the entries
+    *
+    * null elements are skipped
+    *
+    * @param records the records to add
+    * @return the number of records added
+    */
+    public int addAll(Collection<? extends Record> records){
+        int added = 0;
+        for(Record record : records){
+            if(add(record)){
+                added++;
+            }
+        }
+        merge();
+        return added;
+    }
+
+    /**
+    * returns the number of records in the store
+    *
+    * @return number of records
+    */
+    public int size(){
+        return size + pending.size();
+    }
+
+    /**
+    * returns the number of bytes of memory outside the heap that the store uses
+    *
+    * @return number of off-heap bytes
+    */
+    public long getOffHeapBytes(){
+        return (long) blocks.size() * BLOCK_ENTRIES * ENTRY_SIZE;
+    }
+
+    /**
+    * removes all records and drops the blocks; their memory is freed once
+    * the garbage collector has collected them
+    */
+    public void clear(){
+        blocks = new ArrayList<>();
+        size = 0;
+        pending = new ArrayList<>();
+        linked = 0;
+        firstOfUser = new int[0];
+        lastOfUser = new int[0];
+    }
+
+    /**
+    * returns the record at the specified position in time order
+    *
+    * @param index the position of the record
+    * @return a Record built from the entry
+    * @throws IndexOutOfBoundsException if the index is out of range
+    */
+    public Record get(int index){
+        merge();
+        if(index < 0 || index >= size){
+            throw new IndexOutOfBoundsException("Index out of bounds: " + index);
+        }
+        return record(index);
+    }
+
+    /**
+    * returns the records with a time in the range [from, to), in time order
+    *
+    * the first record is found by binary search
+    *
+    * @param from start of the range in milliseconds since the epoch, inclusive
+    * @param to end of the range in milliseconds since the epoch, exclusive
+    * @return the records in the range
+    *
+    * @throws IllegalArgumentException if from is after to
+    */
+    public List<Record> getRecordsBetween(long from, long to){
+        if(from > to){
+            throw new IllegalArgumentException("Invalid range: the start of the range is after its end.");
+        }
+        merge();
+
+        List<Record> records = new ArrayList<>();
+        for(int position = lowerBound(from); position < size && time(position) < to; position++){
+            records.add(record(position));
+        }
+        Metrics.scan(records.size());
+        return records;
+    }
+
+    /**
+    * returns the first login session for the specified user
+    *
+    * @param user specified user
+    * @return first login session for user
+    *
+    * @throws NoSuchElementException if the specified user has no login records
+    * @throws IllegalArgumentException if user is null or empty
+    */
+    public Session getFirstSession(String user){
+        return SessionPairing.first(recordsOf(user, false));
+    }
+
+    /**
+    * returns the last login session for the specified user
+    *
+    * @param user specified user
+    * @return last login session for user
+    *
+    * @throws NoSuchElementException if the specified user has no login records
+    * @throws IllegalArgumentException if user is null or empty
+    */
+    public Session getLastSession(String user){
+        return SessionPairing.last(recordsOf(user, true));
+    }
+
+    /**
+    * returns the total time in milliseconds the specified user has been
+    * logged in, counting only sessions with a logout record
+    *
+    * @param user the specified user
+    * @return the total time in milliseconds
+    *
+    * @throws NoSuchElementException if the specified user does not match any records
+    * @throws IllegalArgumentException if user is null or empty
+    */
+    public long getTotalTime(String user){
+        return SessionPairing.totalTime(recordsOf(user, false));
+    }
+
+    /**
+    * returns all login sessions of the specified user,
+    * ordered from earliest to latest login time
+    *
+    * @param user the specified user
+    * @return a sorted list of the user's sessions
+    *
+    * @throws NoSuchElementException if the specified user does not match any records
+    * @throws IllegalArgumentException if user is null or empty
+    */
+    public SortedLinkedList<Session> getAllSessions(String user){
+        return SessionPairing.all(recordsOf(user, false));
+    }
+
+    /*
+     * Returns the records of the user in time order, or latest first.
+     */
+    private UserRecords recordsOf(String user, boolean descending){
+        if(user == null || user.isEmpty()){
+            throw new IllegalArgumentException("Invalid user argument: Username must be non-null and non-empty.");
+        }
+        merge();
+        relink();
+
+        int id = UserTable.lookup(user);
+        int start = (id < 0 || id >= firstOfUser.length) ? -1
+            : descending ? lastOfUser[id] : firstOfUser[id];
+        return new UserRecords(start, descending);
+    }
+
+    /*
+     * Follows the links from one entry of a user to the next or previous one.
+     */
+    private final class UserRecords extends SessionPairing.UserRecords {
+        final int field;
+        int position;
+
+        UserRecords(int start, boolean descending){
+            this.field = descending ? PREVIOUS : NEXT;
+            this.position = start;
+        }
+
+        @Override
+        Record nextRecord(){
+            if(position < 0){
+                return null;
+            }
+            scanned++;
+            Record record = record(position);
+            position = block(position).getInt(offset(position) + field);
+            return record;
+        }
+    }
+
+    private ByteBuffer block(int position){
+        return blocks.get(position >>> BLOCK_SHIFT);
+    }
+
+    private static int offset(int position){
+        return (position & (BLOCK_ENTRIES - 1)) * ENTRY_SIZE;
+    }
+
+    private long time(int position){
+        return block(position).getLong(offset(position) + TIME);
+    }
+
+    private Record record(int position){
+        ByteBuffer block = block(position);
+        int offset = offset(position);
+        int terminal = block.getInt(offset + TERMINAL);
+        return new Record(terminal >>> 1, (terminal & 1) != 0, block.getInt(offset + USER), block.getLong(offset + TIME));
+    }
+
+    /* Stores the record at the position, adding a block if the position is past the last one. */
+    private void set(int position, Record record){
+        if((position >>> BLOCK_SHIFT) == blocks.size()){
+            blocks.add(ByteBuffer.allocateDirect(BLOCK_ENTRIES * ENTRY_SIZE));
+        }
+        ByteBuffer block = block(position);
+        int offset = offset(position);
+        block.putInt(offset + TERMINAL, (record.getTerminal() << 1) | (record.isLogin() ? 1 : 0));
+        block.putInt(offset + USER, record.getUserId());
+        block.putLong(offset + TIME, record.getTimeMillis());
+    }
+
+    /* Copies the record of an entry to another position; the links are built again later. */
+    private void move(int from, int to){
+        ByteBuffer source = block(from);
+        ByteBuffer target = block(to);
+        target.putLong(offset(to) + TERMINAL, source.getLong(offset(from) + TERMINAL));
+        target.putLong(offset(to) + TIME, source.getLong(offset(from) + TIME));
+    }
+
+    /* Links the entry at the position after the last entry of its user. */
+    private void link(int position){
+        ByteBuffer block = block(position);
+        int offset = offset(position);
+        int id = block.getInt(offset + USER);
+        if(id >= firstOfUser.length){
+            int length = Math.max(id + 1, firstOfUser.length * 2);
+            int known = firstOfUser.length;
+            firstOfUser = Arrays.copyOf(firstOfUser, length);
+            lastOfUser = Arrays.copyOf(lastOfUser, length);
+            Arrays.fill(firstOfUser, known, length, -1);
+            Arrays.fill(lastOfUser, known, length, -1);
+        }
+
+        int previous = lastOfUser[id];
+        block.putInt(offset + PREVIOUS, previous);
+        block.putInt(offset + NEXT, -1);
+        if(previous < 0){
+            firstOfUser[id] = position;
+        } else {
+            block(previous).putInt(offset(previous) + NEXT, position);
+        }
+        lastOfUser[id] = position;
+    }
+
+    /* Links all entries again after a merge has moved them. */
+    private void relink(){
+        if(linked == size){
+            return;
+        }
+        Arrays.fill(firstOfUser, -1);
+        Arrays.fill(lastOfUser, -1);
+        for(int position = 0; position < size; position++){
+            link(position);
+        }
+        linked = size;
+    }
+
+    /*
+     * Sorts the pending records and merges them into the entries from the
+     * back, so every entry moves at most once.
+     */
+    private void merge(){
+        if(pending.isEmpty()){
+            return;
+        }
+
+        //reversed first, so the stable sort puts equal times newest first like SortedLinkedList
+        Collections.reverse(pending);
+        pending.sort(null);
+
+        int position = size - 1;
+        int target = size + pending.size();
+        //the new blocks are added in order, before anything is moved into them
+        for(int end = size; end < target; end++){
+            if((end >>> BLOCK_SHIFT) == blocks.size()){
+                blocks.add(ByteBuffer.allocateDirect(BLOCK_ENTRIES * ENTRY_SIZE));
+            }
+        }
+        for(int i = pending.size() - 1; i >= 0; i--){
+            Record record = pending.get(i);
+            //a new record goes in front of the stored ones with the same time
+            while(position >= 0 && time(position) >= record.getTimeMillis()){
+                move(position--, --target);
+            }
+            set(--target, record);
+        }
+        size += pending.size();
+        pending = new ArrayList<>();
+        linked = Math.min(linked, target);
+    }
+
+    /* Returns the first position whose time is not smaller than time. */
+    private int lowerBound(long time){
+        int low = 0;
+        int high = size;
+        while(low < high){
+            int middle = (low + high) >>> 1;
+            if(time(middle) < time){
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+}
@@ -0,0 +1,182 @@
+package project3;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
+
+/**
+* This class caches the results of the per-user queries of a RecordList.
+*
+* Results are kept for at most a fixed number of users; when a new user has
+* to be added, the user whose results were used least recently is dropped.
+* The owner of the cache invalidates a user whenever that user's records
+* change. Lists of sessions are made read-only before they are cached, so
+* that a cached list can be handed to every caller without a copy.
+*
+* The cache may be used by several threads at once. It counts how many
+* lookups were answered from the cache (hits) and how many were not (misses).
+*
+* @author Carsten Kaiser
+*/
+public class QueryCache{
+
+    private static final int FIRST = 0;
+    private static final int LAST = 1;
+    private static final int TOTAL = 2;
+    private static final int ALL = 3;
+    private static final int QUERIES = 4;
+
+    private int capacity;
+    // cached results per user, in access order
+    private LinkedHashMap<String, Object[]> entries;
+
+    private long hits;
+    private long misses;
+
+    /**
+    * one-parameter constructor that creates an empty cache
+    *
+    * @throws IllegalArgumentException if capacity is not positive
+    *
+    * @param capacity the number of users whose results are kept
+    */
+    public QueryCache(int capacity){
+        if(capacity <= 0){
+            throw new IllegalArgumentException("Cache capacity must be positive.");
+        }
+        this.capacity = capacity;
+        this.entries = new LinkedHashMap<String, Object[]>(16, 0.75f, true){
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Object[]> eldest){
+                return size() > QueryCache.this.capacity;
+            }
+        };
+    }
+
+    /**
+    * returns the cached first session of the user, computing it on a miss
+    *
+    * @param user the user
+    * @param query computes the result if it is not cached
+    * @return the first session
+    */
+    public Session getFirstSession(String user, Supplier<Session> query){
+        return lookup(user, FIRST, query);
+    }
+
+    /**
+    * returns the cached last session of the user, computing it on a miss
+    *
+    * @param user the user
+    * @param query computes the result if it is not cached
+    * @return the last session
+    */
+    public Session getLastSession(String user, Supplier<Session> query){
+        return lookup(user, LAST, query);
+    }
+
+    /**
+    * returns the cached total time of the user, computing it on a miss
+    *
+    * @param user the user
+    * @param query computes the result if it is not cached
+    * @return the total time in milliseconds
+    */
+    public long getTotalTime(String user, LongSupplier query){
+        return lookup(user, TOTAL, query::getAsLong);
+    }
+
+    /**
+    * returns the cached sessions of the user, computing them on a miss
+    *
+    * the returned list is read-only and shared with other callers
+    *
+    * @param user the user
+    * @param query computes the result if it is not cached
+    * @return a read-only list of the user's sessions
+    */
+    public SortedLinkedList<Session> getAllSessions(String user, Supplier<SortedLinkedList<Session>> query){
+        return lookup(user, ALL, () -> {
+            SortedLinkedList<Session> sessions = query.get();
+            sessions.setReadOnly();
+            return sessions;
+        });
+    }
+
+    /**
+    * drops all cached results of the user
+    *
+    * @param user the user whose records changed
+    */
+    public synchronized void invalidate(String user){
+        entries.remove(user);
+    }
+
+    /**
+    * drops all cached results
+    */
+    public synchronized void clear(){
+        entries.clear();
+    }
+
+    /**
+    * returns the number of lookups answered from the cache
+    *
+    * @return number of hits
+    */
+    public synchronized long getHits(){
+        return hits;
+    }
+
+    /**
+    * returns the number of lookups that had to run the query
+    *
+    * @return number of misses
+    */
+    public synchronized long getMisses(){
+        return misses;
+    }
+
+    /**
+    * returns the number of users with cached results
+    *
+    * @return number of cached users
+    */
+    public synchronized int size(){
+        return entries.size();
+    }
+
+    /**
+    * returns the number of users whose results are kept
+    *
+    * @return capacity of the cache
+    */
+    public int getCapacity(){
+        return capacity;
+    }
+
+    /*
+     * Returns the cached result or runs the query and caches its result.
+     * The query runs without holding the lock, so a slow query does not
+     * hold up lookups of other users; an exception is passed on and
+     * nothing is cached.
+     */
+    @SuppressWarnings("unchecked")
+    private <T> T lookup(String user, int query, Supplier<T> compute){
+        synchronized(this){
+            Object[] results = entries.get(user);
+            if(results != null && results[query] != null){
+                hits++;
+                return (T) results[query];
+            }
+            misses++;
+        }
+
+        T result = compute.get();
+        synchronized(this){
+            entries.computeIfAbsent(user, k -> new Object[QUERIES])[query] = result;
+        }
+        return result;
+    }
+}
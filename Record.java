@@ -1,5 +1,6 @@
 package project3;
 
+import java.time.Instant;
 import java.util.Date;
 
 /**
@@ -11,8 +12,10 @@ public class Record implements Comparable<Record>{
     
     private int terminal;
     private boolean login;
-    private String username;
-    private Date time;
+    // id of the username in the UserTable
+    private int userId;
+    // milliseconds since the epoch
+    private long time;
     
     /**
     * four-parameter constructor that validates the information and creates the requested Record object
@@ -22,21 +25,54 @@ public class Record implements Comparable<Record>{
     * @param terminal positive integer
     * @param login indicates if a given Record object represents a login record
     * @param username name of the user
-    * @param time represents the date and time at which the user logged in or logged out
+    * @param time the number of milliseconds since the epoch at which the user logged in or logged out
     */
-    public Record(int terminal, boolean login, String username, Date time){
+    public Record(int terminal, boolean login, String username, long time){
         if(terminal == 0){
             throw new IllegalArgumentException("Invalid Terminal Number: Terminal number must be a positive integer.");
         }
         
         this.terminal = Math.abs(terminal);
         this.login = login;
-        this.username = username;
+        this.userId = UserTable.idOf(username);
         this.time = time;
 
         
     }
 
+    /*
+     * Creates a record for a user id from the UserTable, for readers that
+     * resolve the usernames themselves. The terminal must not be 0.
+     */
+    Record(int terminal, boolean login, int userId, long time){
+        this.terminal = Math.abs(terminal);
+        this.login = login;
+        this.userId = userId;
+        this.time = time;
+    }
+
+    /**
+    * four-parameter constructor that validates the information and creates the requested Record object
+    *
+    * @throws IllegalArgumentException if called with invalid value for the terminal number
+    * @throws IllegalArgumentException if time is null
+    *
+    * @param terminal positive integer
+    * @param login indicates if a given Record object represents a login record
+    * @param username name of the user
+    * @param time represents the date and time at which the user logged in or logged out
+    */
+    public Record(int terminal, boolean login, String username, Date time){
+        this(terminal, login, username, timeOf(time));
+    }
+
+    private static long timeOf(Date time){
+        if(time == null){
+            throw new IllegalArgumentException("Time cannot be null.");
+        }
+        return time.getTime();
+    }
+
     /**
     * returns the integer terminal
     * @return terminal value
@@ -66,17 +102,44 @@ public class Record implements Comparable<Record>{
     * @return username
     **/
     public String getUsername(){
-        return username;
+        return UserTable.nameOf(userId);
+    }
+
+    /**
+    * returns the id of the username in the UserTable
+    * @return user id
+    */
+    public int getUserId(){
+        return userId;
     }
 
     /**
     * returns date and time at which the user logged in or logged out
+    *
+    * the Date is a new copy on every call
+    *
     * @return date and time 
     */
     public Date getTime(){
+        return new Date(time);
+    }
+
+    /**
+    * returns the time at which the user logged in or logged out
+    * @return milliseconds since the epoch
+    */
+    public long getTimeMillis(){
         return time;
     }
 
+    /**
+    * returns the time at which the user logged in or logged out
+    * @return the time as an Instant
+    */
+    public Instant getInstant(){
+        return Instant.ofEpochMilli(time);
+    }
+
     /**
      * compares this Record with another Record based on time
      *
@@ -87,7 +150,7 @@ public class Record implements Comparable<Record>{
      */
     @Override
     public int compareTo(Record other) {
-        return this.time.compareTo(other.time);
+        return Long.compare(this.time, other.time);
     }
 
     /**
@@ -112,7 +175,7 @@ public class Record implements Comparable<Record>{
         Record other = (Record) obj;
 
         if(terminal == other.terminal && login == other.login && 
-        username.equals(other.username) && time.equals(other.time)){
+        userId == other.userId && time == other.time){
             return true;
         }
 
@@ -1,28 +1,204 @@
 package project3;
 
-import java.util.List;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
-import java.util.Date;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
 import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
 
 /**
 * This class stores all the Record objects
-* Inherits ArrayList<Record>
+*
+* The records are kept in a SortedLinkedList ordered by time, which this
+* class extends. Next to it every user has its own state: the user's
+* records on each terminal, also ordered by time, and the sessions paired
+* from them. A logout only closes a login on its own terminal, so a record
+* that arrives out of order only pairs that terminal again.
+*
+* Sessions are paired as records are added: every user keeps the logins
+* that are still open (per terminal) and a sorted list of closed sessions,
+* so the queries answer from that state instead of re-pairing the records.
+*
+* Across all users the list also keeps the closed sessions ordered by login
+* time and the open logins ordered by time, which the time range queries
+* seek into instead of scanning the whole list. The same two indexes are
+* kept for every terminal, for the terminal queries.
 *
 * @author Carsten Kaiser
 */
-public class RecordList extends SortedLinkedList<Record>{
+public class RecordList extends SortedLinkedList<Record> implements SessionQueries{
+
+    // per-user records and session state, by the id of the user in the UserTable
+    private Map<Integer, UserState> users = new HashMap<>();
+
+    // closed sessions of all users, ordered by login time
+    private SortedLinkedList<Session> sessionsByLogin = new SortedLinkedList<>();
+    // logins of all users without a logout yet, ordered by time
+    private SortedLinkedList<Record> openLogins = new SortedLinkedList<>();
+    // longest closed session so far, bounds how far back an overlap search starts
+    private long maxSessionLength;
+    // sessions and open logins of every terminal
+    private Map<Integer, TerminalState> terminals = new HashMap<>();
+    // cached query results, null if caching is off
+    private QueryCache cache;
 
     /**
     * default constructor that creates an empty RecordList object
     **/
     public RecordList() {
+        countInserts();
+    }
+
+    /**
+    * one-parameter constructor that creates an empty RecordList object whose
+    * per-user query results are cached for the most recently queried users
+    *
+    * with a cache, getAllSessions returns read-only lists that are shared
+    * between callers
+    *
+    * @throws IllegalArgumentException if cacheSize is negative
+    *
+    * @param cacheSize the number of users whose results are cached, 0 for no cache
+    */
+    public RecordList(int cacheSize) {
+        if(cacheSize < 0){
+            throw new IllegalArgumentException("Cache size cannot be negative.");
+        }
+        if(cacheSize > 0){
+            cache = new QueryCache(cacheSize);
+        }
+        countInserts();
+    }
+
+    /**
+    * returns the cache of query results, which also counts hits and misses
+    *
+    * @return the cache, or null if this list does not cache results
+    */
+    public QueryCache getQueryCache(){
+        return cache;
+    }
+
+    /**
+    * adds the record to the list and updates the session state of its user
+    *
+    * records that come after all other records of the same user on the same
+    * terminal are paired incrementally; for a record that lands in the middle
+    * of that history, the sessions on its terminal from its time on are
+    * paired again, and only the ones that change are updated in the indexes
+    *
+    * @param record the record to add
+    * @return true if the record was added, false if it is null
+    */
+    @Override
+    public boolean add(Record record){
+        if(!super.add(record)){
+            return false;
+        }
+
+        if(cache != null){
+            cache.invalidate(record.getUsername());
+        }
+
+        users.computeIfAbsent(record.getUserId(), k -> new UserState()).add(record);
+        return true;
+    }
+
+    /**
+    * adds all records of the collection and updates the session state of
+    * their users
+    *
+    * the records are merged into the list in one pass; where the new records
+    * of a user all come after the user's existing ones on the same terminal,
+    * only the new records are paired, and the new sessions are merged into
+    * the indexes of all users at once. On other terminals the sessions are
+    * paired again from the earliest new record on.
+    *
+    * @param records the records to add, null elements are skipped
+    * @return the number of records added
+    */
+    @Override
+    public int addAll(Collection<? extends Record> records){
+        int added = super.addAll(records);
+
+        //group the new records by user, keeping their order
+        Map<Integer, List<Record>> batches = new HashMap<>();
+        for(Record record : records){
+            if(record != null){
+                batches.computeIfAbsent(record.getUserId(), k -> new ArrayList<>()).add(record);
+            }
+        }
+
+        List<Session> newSessions = new ArrayList<>();
+        List<Record> newOpen = new ArrayList<>();
+        for(Map.Entry<Integer, List<Record>> batch : batches.entrySet()){
+            if(cache != null){
+                cache.invalidate(UserTable.nameOf(batch.getKey()));
+            }
+            UserState state = users.computeIfAbsent(batch.getKey(), k -> new UserState());
+            state.addAll(batch.getValue(), newSessions, newOpen);
+        }
+
+        indexAll(newSessions, newOpen);
+        return added;
+    }
+
+    /**
+    * removes the first occurence of the record from the list
+    * and updates the session state of its user
+    *
+    * @param o the record to remove
+    * @return true if the record was removed, false otherwise
+    */
+    @Override
+    public boolean remove(Object o){
+        if(!super.remove(o)){
+            return false;
+        }
+
+        Record record = (Record) o;
+        if(cache != null){
+            cache.invalidate(record.getUsername());
+        }
+
+        UserState state = users.get(record.getUserId());
+        state.remove(record);
+        if(state.size == 0){
+            users.remove(record.getUserId());
+        }
+        return true;
+    }
+
+    /**
+    * removes all records from the list
+    */
+    @Override
+    public void clear(){
+        super.clear();
+        if(cache != null){
+            cache.clear();
+        }
+        users.clear();
+        sessionsByLogin.clear();
+        openLogins.clear();
+        terminals.clear();
+        maxSessionLength = 0;
     }
 
     /**
     * returns and constructs the first login session for the specified user
     *
-    * if there are multiple login session for the 
+    * if there are multiple login session for the
     * specified user, the first one is the one with the earliest login time
     *
     * @return first login session for user
@@ -32,227 +208,913 @@ public class RecordList extends SortedLinkedList<Record>{
     * @throws IllegalArgumentException if the function is called with an invalid argument
     */
     public Session getFirstSession(String user){
+        if(cache != null){
+            return cache.getFirstSession(user, () -> findFirstSession(user));
+        }
+        return findFirstSession(user);
+    }
+
+    /* Answers getFirstSession from the user's session state. */
+    private Session findFirstSession(String user){
         //check if null or empty string to throw IllegalArgumentException
         if (user == null || user.isEmpty()){
             throw new IllegalArgumentException("Invalid user argument");
         }
 
-        //iterate through array while searching for first session using .before()
-        Record loginRecord = null;
-        Record logoutRecord = null;
+        UserState state = users.get(UserTable.lookup(user));
+        Session first = null;
 
-        for(Record recordLog : this){
-            if (recordLog.getUsername().equals(user) && recordLog.isLogin()) {
-                if (loginRecord == null || recordLog.getTime().before(loginRecord.getTime())) {
-                    loginRecord = recordLog;
+        if(state != null){
+            if(state.closed.size() > 0){
+                first = state.closed.getFirst();
+            }
+            //an open login may be earlier than every closed session
+            for(ArrayDeque<Record> logins : state.open.values()){
+                Record login = logins.peekFirst();
+                if(login != null && (first == null || login.getTimeMillis() < first.getLoginTimeMillis())){
+                    first = new Session(login, null);
                 }
             }
         }
 
         //if not found, throw NoSuchElementException
-        if(loginRecord == null){
+        if(first == null){
             throw new NoSuchElementException("Error: the specified user does not match any of the records in the list.");
         }
 
-        //find the logout session
-        for(Record recordLog : this){
-            if(recordLog.getTerminal() == loginRecord.getTerminal()
-            && recordLog.getUsername().equals(user)
-            && recordLog.isLogout()
-            && recordLog.getTime().after(loginRecord.getTime())){
-                logoutRecord = recordLog;
-                break;
-            }
-
-        }
-
-        //constructs and returns first login sesison
-        return new Session(loginRecord, logoutRecord);
+        return first;
 
     }
 
     /**
     * returns the last login session for the specified user
     *
-    * if there are multiple login session for the 
+    * if there are multiple login session for the
     * specified user, the last one is the one with the latest login time
-    * 
+    *
     * @return last login session for user
     * @param user specified user
     *
-    * @throws NoSuchElementException if the specified user 
+    * @throws NoSuchElementException if the specified user
     * does not match any of the records in the list
     * @throws IllegalArgumentException if the function is called with an invalid argument
     */
     public Session getLastSession(String user){
+        if(cache != null){
+            return cache.getLastSession(user, () -> findLastSession(user));
+        }
+        return findLastSession(user);
+    }
+
+    /* Answers getLastSession from the user's session state. */
+    private Session findLastSession(String user){
         //check if null or empty string to throw IllegalArgumentException
         if (user == null || user.isEmpty()){
             throw new IllegalArgumentException("Invalid user argument");
         }
 
-        //iterate through array while searching for last login using .after() 
-        Record loginRecord = null;
-        for(Record recordLog : this){
-            if (recordLog.getUsername().equals(user) && recordLog.isLogin()) {
-                if (loginRecord == null || recordLog.getTime().after(loginRecord.getTime())) {
-                    loginRecord = recordLog;
+        UserState state = users.get(UserTable.lookup(user));
+        Session last = null;
+
+        if(state != null){
+            if(state.closed.size() > 0){
+                last = state.closed.getLast();
+            }
+            //an open login may be later than every closed session
+            for(ArrayDeque<Record> logins : state.open.values()){
+                Record login = logins.peekLast();
+                if(login != null && (last == null || login.getTimeMillis() > last.getLoginTimeMillis())){
+                    last = new Session(login, null);
                 }
             }
         }
 
         //if not found, throw NoSuchElementException
-        if(loginRecord == null){
+        if(last == null){
             throw new NoSuchElementException("Error: the specified user does not match any of the records in the list.");
         }
 
-        
-        //find the logout session
-        Record logoutRecord = null;
-        for(Record recordLog : this){
-            if(recordLog.getTerminal() == loginRecord.getTerminal()
-            && recordLog.getUsername().equals(user)
-            && recordLog.isLogout()
-            && recordLog.getTime().after(loginRecord.getTime())){
-                logoutRecord = recordLog;
-                break;
-            }
-
-        }
-
-        //constructs and returns first login sesison
-        return new Session(loginRecord, logoutRecord);
+        return last;
     }
 
 
     /**
-     * calculates the total amount of time the specified user 
+     * calculates the total amount of time the specified user
      * has been logged in across all sessions
      *
-     * overlapping session times will be counted in full for each session
+     * overlapping session times will be counted in full for each session;
+     * getSessionSweep also gives the time with overlaps counted once
      *
      * only sessions with a logout time are included in the total time
      *
      * @param user the specified user
-     * 
+     *
      * @return the total time in milliseconds the user has been logged in
      *
      * @throws NoSuchElementException if the specified user does not match any records in the list
      * @throws IllegalArgumentException if the function is called with an invalid argument
      */
     public long getTotalTime(String user){
+        if(cache != null){
+            return cache.getTotalTime(user, () -> findTotalTime(user));
+        }
+        return findTotalTime(user);
+    }
+
+    /* Answers getTotalTime from the user's session state. */
+    private long findTotalTime(String user){
         //handle exceptions
         if(user == null || user.isEmpty()){
             throw new IllegalArgumentException("Invalid user argument: Username must be non-null and non-empty.");
         }
 
-        long totalTime = 0;
-        boolean userFound = false;
-        List<Record> activeLogins = new ArrayList<>();
+        UserState state = users.get(UserTable.lookup(user));
+        if(state == null){
+            throw new NoSuchElementException("No records found for the specified user.");
+        }
 
+        return state.totalTime;
 
-        for(Record recordLog : this){
-            if(recordLog.getUsername().equals(user)){
-                userFound = true;
+    }
 
-                if(recordLog.isLogin()){
-                    activeLogins.add(recordLog);
 
-                } else if(recordLog.isLogout()){
-                    for(int i = 0; i < activeLogins.size(); i++){
-                        Record loginRecord = activeLogins.get(i);
+    /**
+    * returns a list of all login sessions associated with the specified user,
+    * ordered from earliest login time to latest login time
+    *
+    * sessions without a logout record are also included
+    *
+    * @param user the specified username to retrieve sessions for
+    *
+    * @return a sorted list of all login sessions associated with the specified user;
+    * if this list caches query results, the list is read-only and shared, and
+    * changing it throws UnsupportedOperationException
+    *
+    * @throws IllegalArgumentException if the specified user is null or an empty string
+    * @throws NoSuchElementException if no records match the specified user
+    */
+    public SortedLinkedList<Session> getAllSessions(String user){
+        if(cache != null){
+            return cache.getAllSessions(user, () -> findAllSessions(user));
+        }
+        return findAllSessions(user);
+    }
 
-                        if(loginRecord.getTerminal() == recordLog.getTerminal()
-                        && recordLog.getTime().after(loginRecord.getTime())){
-                            totalTime += recordLog.getTime().getTime() - loginRecord.getTime().getTime();
-                            activeLogins.remove(i);
-                            break;
-                        }
-                    }
+    /* Answers getAllSessions from the user's session state. */
+    private SortedLinkedList<Session> findAllSessions(String user){
 
-                    
-                }
-            }
+        //check for null parameter
+        if(user == null || user.isEmpty()){
+            throw new IllegalArgumentException("Invalid user argument: Username must be non-null and non-empty.");
         }
 
-        if(userFound == false){
+        UserState state = users.get(UserTable.lookup(user));
+
+        //if there is no state for the user, there was no record in the list
+        if(state == null){
             throw new NoSuchElementException("No records found for the specified user.");
         }
 
-        return totalTime;
+        //copy the closed sessions so callers cannot change the stored state
+        SortedLinkedList<Session> userSessions = new SortedLinkedList<>();
+        for(Session session : state.closed){
+            userSessions.add(session);
+        }
+
+        //any open logins are active sessions
+        for(ArrayDeque<Record> logins : state.open.values()){
+            for(Record openLogin : logins){
+                userSessions.add(new Session(openLogin, null));
+            }
+        }
+
+        return userSessions;
 
     }
 
 
     /**
-    * returns a list of all login sessions associated with the specified user, 
-    * ordered from earliest login time to latest login time
+    * returns the records with a time in the range [from, to), in time order
     *
-    * sessions without a logout record are also included
+    * @param from start of the range in milliseconds since the epoch, inclusive
+    * @param to end of the range in milliseconds since the epoch, exclusive
+    * @return a sorted list of the records in the range
     *
-    * @param user the specified username to retrieve sessions for
+    * @throws IllegalArgumentException if from is after to
+    */
+    public SortedLinkedList<Record> getRecordsBetween(long from, long to){
+        checkRange(from, to);
+
+        SortedLinkedList<Record> records = new SortedLinkedList<>();
+        Iterator<Record> it = iteratorFrom(timeKey(from));
+        int scanned = 0;
+        while(it.hasNext()){
+            Record record = it.next();
+            scanned++;
+            if(record.getTimeMillis() >= to){
+                break;
+            }
+            records.add(record);
+        }
+        Metrics.scan(scanned);
+        return records;
+    }
+
+    /**
+    * returns the sessions of all users that overlap the range [from, to),
+    * ordered by login time
     *
-    * @return a sorted list of all login sessions associated with the specified user
+    * a session overlaps the range if it started before the end of the range
+    * and has not ended by its start; active sessions have not ended
     *
-    * @throws IllegalArgumentException if the specified user is null or an empty string
-    * @throws NoSuchElementException if no records match the specified user
+    * @param from start of the range in milliseconds since the epoch, inclusive
+    * @param to end of the range in milliseconds since the epoch, exclusive
+    * @return a sorted list of the overlapping sessions
+    *
+    * @throws IllegalArgumentException if from is after to
     */
-    public SortedLinkedList<Session> getAllSessions(String user){
+    public SortedLinkedList<Session> getSessionsBetween(long from, long to){
+        checkRange(from, to);
 
-        //check for null parameter
+        SortedLinkedList<Session> sessions = new SortedLinkedList<>();
+        forEachSessionBetween(from, to, sessions::add);
+        return sessions;
+    }
+
+    /**
+    * returns the number of distinct users that are logged in at the given time
+    *
+    * @param time the time in milliseconds since the epoch
+    * @return the number of users logged in at that time
+    */
+    public int getConcurrentUsers(long time){
+        BitSet loggedIn = new BitSet();
+        long to = (time == Long.MAX_VALUE) ? time : time + 1;
+        forEachSessionBetween(time, to, session -> loggedIn.set(session.getUserId()));
+        return loggedIn.cardinality();
+    }
+
+    /*
+     * Visits the sessions that overlap [from, to). A closed session that
+     * overlaps the range cannot have started more than maxSessionLength
+     * before it, so the search seeks to that point and stops at the end
+     * of the range.
+     */
+    private void forEachSessionBetween(long from, long to, Consumer<Session> action){
+        long seek = (from < Long.MIN_VALUE + maxSessionLength) ? Long.MIN_VALUE : from - maxSessionLength;
+
+        Iterator<Session> closed = sessionsByLogin.iteratorFrom(new Session(timeKey(seek), null));
+        int scanned = 0;
+        while(closed.hasNext()){
+            Session session = closed.next();
+            scanned++;
+            if(session.getLoginTimeMillis() >= to){
+                break;
+            }
+            if(session.getLogoutTimeMillis() > from){
+                action.accept(session);
+            }
+        }
+
+        for(Record login : openLogins){
+            scanned++;
+            if(login.getTimeMillis() >= to){
+                break;
+            }
+            action.accept(new Session(login, null));
+        }
+        Metrics.scan(scanned);
+    }
+
+    /**
+    * sweeps over the sessions of the specified user, which gives the total
+    * time both with and without counting overlapping sessions twice
+    *
+    * @param user the specified user
+    * @return the sweep over the user's sessions
+    *
+    * @throws NoSuchElementException if the specified user does not match any records
+    * @throws IllegalArgumentException if user is null or empty
+    */
+    public SessionSweep getSessionSweep(String user){
         if(user == null || user.isEmpty()){
             throw new IllegalArgumentException("Invalid user argument: Username must be non-null and non-empty.");
         }
 
-        
-        SortedLinkedList<Session> userSessions = new SortedLinkedList<>(); //initalize SortedLinkedList of all sessions
-        boolean userFound = false;  //if user is not found
-        List<Record> activeLogins = new ArrayList<>(); //initalize ArrayList for keeping track of all login records
-
-        //iterate through original SortedLinkedList
-        for(Record recordLog : this){
-            //check to see if username matches, if so userFound = true
-            if(recordLog != null && recordLog.getUsername().equals(user)){
-                userFound = true;
-
-                //check if login record, if so add to ArrayList
-                if(recordLog.isLogin()){
-                    activeLogins.add(recordLog);
-                } 
-                //check if logout record, if so, itterate through ArrayList to match with login record
-                else if(recordLog.isLogout()){
-                    for(int i = 0; i < activeLogins.size(); i++){
-                        Record loginRecord = activeLogins.get(i);
-
-                        //if login record matches with logout record, create new Session and add to Session list
-                        if(loginRecord.getTerminal() == recordLog.getTerminal()
-                        && recordLog.getTime().after(loginRecord.getTime())){
-
-                            Session session = new Session(loginRecord, recordLog);
-                            userSessions.add(session);
-                            activeLogins.remove(i); //removes the matching login so there are no repeats
-                            break;
-                        }
-                    }
+        UserState state = users.get(UserTable.lookup(user));
+        if(state == null){
+            throw new NoSuchElementException("No records found for the specified user.");
+        }
+        return state.sweep();
+    }
+
+    /**
+    * sweeps over the sessions of all users, which gives the time during
+    * which anyone was logged in and the most sessions active at once
+    *
+    * @return the sweep over all sessions
+    */
+    public SessionSweep getSessionSweep(){
+        return new SessionSweep(sessionsByLogin.iterator(), openLogins.iterator());
+    }
 
+    /**
+    * returns a summary of the sessions of every user, ordered by username
+    *
+    * every user already has its own records and sessions, so the users are
+    * summarized in parallel without going through the records; the list
+    * must not change while the report is made
+    *
+    * @return one report per user, ordered by username
+    */
+    public List<UserReport> getUserReports(){
+        return users.entrySet().parallelStream()
+            .map(entry -> entry.getValue().report(UserTable.nameOf(entry.getKey())))
+            .sorted(Comparator.comparing(UserReport::getUsername, Comparator.nullsFirst(Comparator.naturalOrder())))
+            .collect(Collectors.toList());
+    }
+
+    /**
+    * returns the session that was active on the terminal at the given time,
+    * which tells who was logged in on it
+    *
+    * a session is active from its login time up to, but not including, its
+    * logout time; an active session has no end. If several sessions were
+    * active, which breaks the rule of one user per terminal, the one with
+    * the latest login is returned.
+    *
+    * @param terminal the terminal number
+    * @param time the time in milliseconds since the epoch
+    * @return the session active on the terminal at that time
+    *
+    * @throws NoSuchElementException if no one was logged in on the terminal at that time
+    */
+    public Session getSessionAt(int terminal, long time){
+        TerminalState state = terminals.get(terminal);
+        Session found = null;
+
+        if(state != null){
+            //the sessions that started by the time, searched from the latest
+            //one back to the earliest that could still be running
+            Iterator<Session> started = (time == Long.MAX_VALUE) ? state.sessions.descendingIterator()
+                : state.sessions.descendingIteratorBefore(new Session(timeKey(time + 1), null));
+            long seek = (time < Long.MIN_VALUE + state.maxSessionLength) ? Long.MIN_VALUE : time - state.maxSessionLength;
+            int scanned = 0;
+            while(started.hasNext()){
+                Session session = started.next();
+                scanned++;
+                if(session.getLoginTimeMillis() < seek){
+                    break;
+                }
+                if(session.getLogoutTimeMillis() > time){
+                    found = session;
+                    break;
+                }
+            }
+            Metrics.scan(scanned);
+
+            //the latest open login by the time is still active
+            int open = (time == Long.MAX_VALUE) ? state.open.size() : state.open.rank(timeKey(time + 1));
+            if(open > 0){
+                Record login = state.open.get(open - 1);
+                if(found == null || login.getTimeMillis() > found.getLoginTimeMillis()){
+                    found = new Session(login, null);
                 }
             }
         }
 
-        //any leftover logins means it is an active session, add new Session to list
-        for(Record openLogin : activeLogins){
-            userSessions.add(new Session(openLogin, null));
+        if(found == null){
+            throw new NoSuchElementException("No user was logged in on terminal " + terminal + " at that time.");
+        }
+        return found;
+    }
 
+    /**
+    * returns the share of the range [from, to) during which a user was
+    * logged in on the terminal
+    *
+    * time covered by more than one session is counted once, and active
+    * sessions last until the end of the range
+    *
+    * @param terminal the terminal number
+    * @param from start of the range in milliseconds since the epoch, inclusive
+    * @param to end of the range in milliseconds since the epoch, exclusive
+    * @return a value between 0 and 1, 0 for an empty range or an unused terminal
+    *
+    * @throws IllegalArgumentException if from is after to
+    */
+    public double getTerminalUtilization(int terminal, long from, long to){
+        checkRange(from, to);
+        if(from == to){
+            return 0;
         }
+        return (double) busyTime(terminals.get(terminal), from, to) / (to - from);
+    }
 
-        //if userFound was never made true, there was no record in the list
-        if(userFound == false){
-            throw new NoSuchElementException("No records found for the specified user.");
+    /**
+    * returns the terminals that were in use the longest during the range
+    * [from, to), busiest first
+    *
+    * terminals that were not used during the range are left out; terminals
+    * that were in use equally long are ordered by terminal number
+    *
+    * @param from start of the range in milliseconds since the epoch, inclusive
+    * @param to end of the range in milliseconds since the epoch, exclusive
+    * @param count the maximum number of terminals to return
+    * @return the terminal numbers
+    *
+    * @throws IllegalArgumentException if from is after to or count is negative
+    */
+    public List<Integer> getBusiestTerminals(long from, long to, int count){
+        checkRange(from, to);
+        if(count < 0){
+            throw new IllegalArgumentException("Invalid count: the number of terminals cannot be negative.");
         }
 
-        
-        return userSessions;
+        Map<Integer, Long> busy = new HashMap<>();
+        for(Map.Entry<Integer, TerminalState> terminal : terminals.entrySet()){
+            long time = busyTime(terminal.getValue(), from, to);
+            if(time > 0){
+                busy.put(terminal.getKey(), time);
+            }
+        }
+
+        List<Integer> busiest = new ArrayList<>(busy.keySet());
+        busiest.sort((a, b) -> {
+            int cmp = Long.compare(busy.get(b), busy.get(a));
+            return (cmp != 0) ? cmp : Integer.compare(a, b);
+        });
+        return busiest.subList(0, Math.min(count, busiest.size()));
+    }
+
+    /*
+     * Returns how much of [from, to) is covered by the sessions of the
+     * terminal. The earliest open login that starts before the end covers
+     * everything after it, so the closed sessions only count up to there.
+     */
+    private long busyTime(TerminalState state, long from, long to){
+        if(state == null || from == to){
+            return 0;
+        }
+
+        long limit = to;
+        Iterator<Record> open = state.open.iterator();
+        if(open.hasNext()){
+            limit = Math.max(from, Math.min(to, open.next().getTimeMillis()));
+        }
+
+        long busy = to - limit;
+        long coveredUntil = from;
+        long seek = (from < Long.MIN_VALUE + state.maxSessionLength) ? Long.MIN_VALUE : from - state.maxSessionLength;
+        Iterator<Session> closed = state.sessions.iteratorFrom(new Session(timeKey(seek), null));
+        while(closed.hasNext()){
+            Session session = closed.next();
+            if(session.getLoginTimeMillis() >= limit){
+                break;
+            }
+            long start = Math.max(session.getLoginTimeMillis(), coveredUntil);
+            long end = Math.min(session.getLogoutTimeMillis(), limit);
+            if(end > start){
+                busy += end - start;
+                coveredUntil = end;
+            }
+        }
+        return busy;
+    }
+
+    /* Adds an open login to the indexes of all users and of its terminal. */
+    private void indexOpenLogin(Record login){
+        openLogins.add(login);
+        terminals.computeIfAbsent(login.getTerminal(), k -> new TerminalState()).open.add(login);
+    }
+
+    /* Removes a login that is no longer open from the indexes. */
+    private void unindexOpenLogin(Record login){
+        openLogins.remove(login);
+        TerminalState state = terminals.get(login.getTerminal());
+        if(state != null){
+            state.open.remove(login);
+        }
+    }
+
+    /* Adds a closed session to the indexes of all users and of its terminal. */
+    private void indexSession(Session session){
+        sessionsByLogin.add(session);
+        TerminalState state = terminals.computeIfAbsent(session.getTerminal(), k -> new TerminalState());
+        state.sessions.add(session);
+        state.maxSessionLength = Math.max(state.maxSessionLength, session.getDuration());
+        maxSessionLength = Math.max(maxSessionLength, session.getDuration());
+    }
+
+    /* Removes a session that no longer exists from the indexes. */
+    private void unindexSession(Session session){
+        sessionsByLogin.remove(session);
+        TerminalState state = terminals.get(session.getTerminal());
+        if(state != null){
+            state.sessions.remove(session);
+        }
+    }
+
+    /* Adds a batch of closed sessions and open logins to the indexes. */
+    private void indexAll(List<Session> sessions, List<Record> logins){
+        sessionsByLogin.addAll(sessions);
+        openLogins.addAll(logins);
+
+        Map<Integer, List<Session>> sessionsByTerminal = new HashMap<>();
+        for(Session session : sessions){
+            sessionsByTerminal.computeIfAbsent(session.getTerminal(), k -> new ArrayList<>()).add(session);
+            maxSessionLength = Math.max(maxSessionLength, session.getDuration());
+        }
+        for(Map.Entry<Integer, List<Session>> batch : sessionsByTerminal.entrySet()){
+            TerminalState state = terminals.computeIfAbsent(batch.getKey(), k -> new TerminalState());
+            state.sessions.addAll(batch.getValue());
+            for(Session session : batch.getValue()){
+                state.maxSessionLength = Math.max(state.maxSessionLength, session.getDuration());
+            }
+        }
+
+        Map<Integer, List<Record>> loginsByTerminal = new HashMap<>();
+        for(Record login : logins){
+            loginsByTerminal.computeIfAbsent(login.getTerminal(), k -> new ArrayList<>()).add(login);
+        }
+        for(Map.Entry<Integer, List<Record>> batch : loginsByTerminal.entrySet()){
+            terminals.computeIfAbsent(batch.getKey(), k -> new TerminalState()).open.addAll(batch.getValue());
+        }
+    }
+
+    private static void checkRange(long from, long to){
+        if(from > to){
+            throw new IllegalArgumentException("Invalid range: the start of the range is after its end.");
+        }
+    }
+
+    /* Returns a record that sorts at the given time, used to seek in the lists. */
+    private static Record timeKey(long time){
+        return new Record(1, true, UserTable.NULL_ID, time);
+    }
+
+
+    /*
+     * Sessions and open logins of a single terminal.
+     */
+    private static class TerminalState {
+
+        // sessions with a logout record, ordered by login time
+        SortedLinkedList<Session> sessions = new SortedLinkedList<>();
+        // logins without a logout yet, ordered by time
+        SortedLinkedList<Record> open = new SortedLinkedList<>();
+        // longest closed session, bounds how far back a search starts
+        long maxSessionLength;
+    }
+
+    /*
+     * Records and sessions of a single user on a single terminal. Logouts
+     * are only paired with logins on their own terminal, so a record can
+     * only change the sessions of this history.
+     */
+    private static class TerminalHistory {
+
+        final int terminal;
+        // the user's records on the terminal, ordered by time; the order of
+        // records with the same time does not change how they pair
+        List<Record> records = new ArrayList<>();
+        // sessions with a logout record, in the order of their logouts,
+        // which is also the order of their logins
+        List<Session> sessions = new ArrayList<>();
+
+        // while addAll adds a batch: the time of its first record here,
+        // whether the terminal is paired again from that time on, and
+        // otherwise how many logins were open before the batch
+        boolean inBatch;
+        long batchStart;
+        boolean repair;
+        int oldLogins;
+
+        TerminalHistory(int terminal){
+            this.terminal = terminal;
+        }
 
+        /* Returns the number of records that are earlier than the time. */
+        int before(long time){
+            int low = 0;
+            int high = records.size();
+            while(low < high){
+                int middle = (low + high) >>> 1;
+                if(records.get(middle).getTimeMillis() < time){
+                    low = middle + 1;
+                } else {
+                    high = middle;
+                }
+            }
+            return low;
+        }
+
+        /* Returns true if the record is not earlier than any record here. */
+        boolean isLast(Record record){
+            return records.isEmpty() || record.getTimeMillis() >= records.get(records.size() - 1).getTimeMillis();
+        }
+
+        /* Adds the record after the records that are not later than it. */
+        void insert(Record record){
+            int index = before(record.getTimeMillis());
+            while(index < records.size() && records.get(index).getTimeMillis() == record.getTimeMillis()){
+                index++;
+            }
+            records.add(index, record);
+        }
+
+        /* Removes a record that is equal to the given one. */
+        void remove(Record record){
+            for(int index = before(record.getTimeMillis()); index < records.size(); index++){
+                if(records.get(index).equals(record)){
+                    records.remove(index);
+                    return;
+                }
+            }
+        }
     }
 
+    /*
+     * Records and session state of a single user.
+     */
+    private class UserState {
+
+        // the user's records and sessions per terminal
+        Map<Integer, TerminalHistory> histories = new HashMap<>();
+        // sessions with a logout record, ordered by login time
+        SortedLinkedList<Session> closed = new SortedLinkedList<>();
+        // logins without a logout yet, per terminal, oldest first
+        Map<Integer, ArrayDeque<Record>> open = new HashMap<>();
+        // total duration of the closed sessions
+        long totalTime;
+        // number of the user's records
+        int size;
+
+        /* Summarizes the user's sessions. */
+        UserReport report(String username){
+            SessionSweep sweep = sweep();
+            int sessionCount = closed.size();
+            for(ArrayDeque<Record> logins : open.values()){
+                sessionCount += logins.size();
+            }
+
+            if(sessionCount == 0){
+                return new UserReport(username, 0, totalTime, 0, null, null, 0);
+            }
+            return new UserReport(username, sessionCount, totalTime, sweep.getMergedTime(),
+                                  findFirstSession(username), findLastSession(username), sweep.getPeakSessions());
+        }
+
+        /* Sweeps over the user's sessions, the open logins sorted by time. */
+        SessionSweep sweep(){
+            List<Record> openLogins = new ArrayList<>();
+            for(ArrayDeque<Record> logins : open.values()){
+                openLogins.addAll(logins);
+            }
+            Collections.sort(openLogins);
+            return new SessionSweep(closed.iterator(), openLogins.iterator());
+        }
+
+        /*
+         * Adds a record. A record that is later than the user's other records
+         * on its terminal is paired on its own, otherwise the terminal is
+         * paired again from the record on.
+         */
+        void add(Record record){
+            TerminalHistory history = histories.computeIfAbsent(record.getTerminal(), TerminalHistory::new);
+            size++;
+            if(history.isLast(record)){
+                history.records.add(record);
+                pair(history, record);
+            } else {
+                history.insert(record);
+                repair(history, record.getTimeMillis());
+            }
+        }
+
+        /*
+         * Removes a record that is in the list, and pairs its terminal again
+         * from the record on.
+         */
+        void remove(Record record){
+            TerminalHistory history = histories.get(record.getTerminal());
+            history.records.remove(record);
+            size--;
+            repair(history, record.getTimeMillis());
+            if(history.records.isEmpty()){
+                histories.remove(record.getTerminal());
+            }
+        }
+
+        /*
+         * Pairs a record that is later than all records paired so far on its
+         * terminal. A logout closes the oldest open login on its terminal.
+         */
+        void pair(TerminalHistory history, Record record){
+            if(record.isLogin()){
+                open.computeIfAbsent(record.getTerminal(), k -> new ArrayDeque<>()).addLast(record);
+                indexOpenLogin(record);
+                return;
+            }
+
+            Record login = matchLogin(record);
+            if(login != null){
+                Session session = new Session(login, record);
+                history.sessions.add(session);
+                closed.add(session);
+                totalTime += session.getDuration();
+                unindexOpenLogin(login);
+                indexSession(session);
+            }
+        }
+
+        /*
+         * Adds a batch of the user's records. On every terminal where the
+         * batch comes after the records paired so far, only the new records
+         * are paired, and their sessions and open logins are collected for
+         * the indexes of all users instead of being added one at a time.
+         * Other terminals are paired again from the first new record on.
+         */
+        void addAll(List<Record> batch, List<Session> newSessions, List<Record> newOpen){
+            size += batch.size();
+            //stable, and linear if the batch is in order already
+            batch.sort(null);
+
+            //the first record of the batch on a terminal is its earliest
+            List<TerminalHistory> touched = new ArrayList<>();
+            for(Record record : batch){
+                TerminalHistory history = histories.computeIfAbsent(record.getTerminal(), TerminalHistory::new);
+                if(!history.inBatch){
+                    history.inBatch = true;
+                    history.batchStart = record.getTimeMillis();
+                    history.repair = !history.isLast(record);
+                    ArrayDeque<Record> logins = open.get(history.terminal);
+                    history.oldLogins = (logins == null) ? 0 : logins.size();
+                    touched.add(history);
+                }
+            }
+
+            int sessionsBefore = newSessions.size();
+            for(Record record : batch){
+                TerminalHistory history = histories.get(record.getTerminal());
+                history.records.add(record);
+                if(history.repair){
+                    continue;
+                }
+                if(record.isLogin()){
+                    open.computeIfAbsent(record.getTerminal(), k -> new ArrayDeque<>()).addLast(record);
+                    continue;
+                }
+
+                Record login = matchLogin(record);
+                if(login != null){
+                    Session session = new Session(login, record);
+                    history.sessions.add(session);
+                    newSessions.add(session);
+                    totalTime += session.getDuration();
+                    //logins are closed oldest first, so the logins that were
+                    //open before the batch, and are in the index, go first
+                    if(history.oldLogins > 0){
+                        unindexOpenLogin(login);
+                        history.oldLogins--;
+                    }
+                }
+            }
+            closed.addAll(newSessions.subList(sessionsBefore, newSessions.size()));
+
+            for(TerminalHistory history : touched){
+                if(history.repair){
+                    history.records.sort(null);
+                    repair(history, history.batchStart);
+                } else {
+                    ArrayDeque<Record> logins = open.get(history.terminal);
+                    if(logins != null){
+                        Iterator<Record> it = logins.iterator();
+                        for(int i = 0; i < history.oldLogins; i++){
+                            it.next();
+                        }
+                        it.forEachRemaining(newOpen::add);
+                    }
+                }
+                history.inBatch = false;
+            }
+        }
+
+        /*
+         * Returns the oldest open login on the terminal of the logout, and
+         * removes it from the open logins, if the logout closes it.
+         * Returns null if the logout does not close a login.
+         */
+        private Record matchLogin(Record logout){
+            ArrayDeque<Record> logins = open.get(logout.getTerminal());
+            if(logins == null || logins.isEmpty()
+            || logout.getTimeMillis() <= logins.peekFirst().getTimeMillis()){
+                return null;
+            }
+
+            Record login = logins.pollFirst();
+            if(logins.isEmpty()){
+                open.remove(logout.getTerminal());
+            }
+            return login;
+        }
+
+        /*
+         * Pairs the user's records on the terminal again from the given time
+         * on, after a record at that time was added or removed.
+         *
+         * Logouts close logins in the order of the logins, so the sessions
+         * that ended before the time stay as they are, and at the time the
+         * logins still waiting are the ones before it that were closed later
+         * or are still open. Pairing starts from those and the records from
+         * the time on; sessions and open logins that come out the same are
+         * left in the indexes, only the others are removed or added.
+         */
+        private void repair(TerminalHistory history, long time){
+            int terminal = history.terminal;
+            List<Session> sessions = history.sessions;
+            int keep = sessions.size();
+            while(keep > 0 && sessions.get(keep - 1).getLogoutTimeMillis() >= time){
+                keep--;
+            }
+            List<Session> previous = new ArrayList<>(sessions.subList(keep, sessions.size()));
+            sessions.subList(keep, sessions.size()).clear();
+
+            //the logins waiting at the time, oldest first; the sessions are
+            //looked up by their logout records, not by equal copies of them
+            ArrayDeque<Record> logins = new ArrayDeque<>();
+            Map<Record, Session> byLogout = new IdentityHashMap<>();
+            for(Session session : previous){
+                if(session.getLoginTimeMillis() < time){
+                    logins.addLast(session.getLoginRecord());
+                }
+                byLogout.put(session.getLogoutRecord(), session);
+            }
+            ArrayDeque<Record> wasOpen = open.remove(terminal);
+            if(wasOpen != null){
+                for(Record login : wasOpen){
+                    if(login.getTimeMillis() < time){
+                        logins.addLast(login);
+                    }
+                }
+            }
+
+            Set<Session> unchanged = Collections.newSetFromMap(new IdentityHashMap<>());
+            List<Session> paired = new ArrayList<>();
+            List<Record> records = history.records;
+            for(int index = history.before(time); index < records.size(); index++){
+                Record record = records.get(index);
+                if(record.isLogin()){
+                    logins.addLast(record);
+                } else if(!logins.isEmpty() && record.getTimeMillis() > logins.peekFirst().getTimeMillis()){
+                    Record login = logins.pollFirst();
+                    Session session = byLogout.remove(record);
+                    if(session != null && session.getLoginRecord() == login){
+                        unchanged.add(session);
+                    } else {
+                        session = new Session(login, record);
+                        paired.add(session);
+                    }
+                    sessions.add(session);
+                }
+            }
+
+            for(Session session : previous){
+                if(!unchanged.contains(session)){
+                    closed.remove(session);
+                    totalTime -= session.getDuration();
+                    unindexSession(session);
+                }
+            }
+            for(Session session : paired){
+                closed.add(session);
+                totalTime += session.getDuration();
+                indexSession(session);
+            }
+
+            //the logins left waiting are open; only those that were not open
+            //before, or are no longer open, change in the indexes
+            Map<Record, Integer> changes = new IdentityHashMap<>();
+            if(wasOpen != null){
+                for(Record login : wasOpen){
+                    changes.merge(login, -1, Integer::sum);
+                }
+            }
+            for(Record login : logins){
+                changes.merge(login, 1, Integer::sum);
+            }
+            for(Map.Entry<Record, Integer> change : changes.entrySet()){
+                for(int i = change.getValue(); i < 0; i++){
+                    unindexOpenLogin(change.getKey());
+                }
+                for(int i = change.getValue(); i > 0; i--){
+                    indexOpenLogin(change.getKey());
+                }
+            }
+            if(!logins.isEmpty()){
+                open.put(terminal, logins);
+            }
+        }
+    }
 
 }
@@ -0,0 +1,348 @@
+package project3;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+/**
+* This class writes the records of a RecordList to a compact binary file
+* and reads them back, which is much faster than parsing the text log again.
+*
+* Layout of a snapshot, all numbers are unsigned LEB128 varints unless noted:
+*     magic "LGSN" and version          (4 bytes each, big-endian)
+*     the log the records were read from:
+*         real path                     (length and UTF-8 bytes)
+*         size in bytes
+*         last modified time            (zig-zag encoded nanoseconds since the epoch)
+*     number of records, number of users
+*     usernames                         (length + 1 and UTF-8 bytes; 0 is null)
+*     for every record, in list order:
+*         time                          (zig-zag encoded for the first record,
+*                                        the gap to the previous one after that)
+*         terminal * 2 + 1 for a login, terminal * 2 for a logout
+*         index of the username
+*     CRC32 of everything above         (4 bytes, big-endian)
+*
+* Reading maps the file into memory, checks that it was written for the
+* log as it is now, checks the checksum, and adds the records to the list
+* in one bulk add. They are stored in order, so the bulk add only has to
+* check that they are sorted, and the list ends up in the same order as
+* the one that was written.
+*
+* A snapshot of another log, or of a log that was changed or appended to
+* after it was read, is rejected, even if the snapshot file is newer.
+*
+* @author Carsten Kaiser
+*/
+public class RecordSnapshot{
+
+    private static final int MAGIC = 0x4C47534E;
+    private static final int VERSION = 2;
+
+    private RecordSnapshot(){
+    }
+
+    /**
+    * writes the records of the list to the file, replacing it
+    *
+    * the snapshot is written to a temporary file first, so a reader never
+    * sees a half-written snapshot
+    *
+    * @param list the records to write
+    * @param file the snapshot file
+    * @param source the log the records were read from, taken before it was read
+    * @throws IOException if the file cannot be written
+    */
+    public static void write(RecordList list, Path file, Source source) throws IOException{
+        //give every user an index, in order of first appearance;
+        //indexes holds it plus one per user id, 0 for users not seen yet,
+        //and only grows to the largest id in the list
+        int[] indexes = new int[64];
+        List<String> usernames = new ArrayList<>();
+        for(Record record : list){
+            if(record.getUserId() >= indexes.length){
+                indexes = Arrays.copyOf(indexes, Math.max(record.getUserId() + 1, indexes.length * 2));
+            }
+            if(indexes[record.getUserId()] == 0){
+                usernames.add(record.getUsername());
+                indexes[record.getUserId()] = usernames.size();
+            }
+        }
+
+        Path dir = file.toAbsolutePath().getParent();
+        Path temp = Files.createTempFile(dir, file.getFileName().toString(), ".tmp");
+        try {
+            try (OutputStream stream = Files.newOutputStream(temp)) {
+                Encoder out = new Encoder(new BufferedOutputStream(stream, 1 << 16));
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                byte[] path = source.path.getBytes(StandardCharsets.UTF_8);
+                out.writeVarLong(path.length);
+                out.write(path);
+                out.writeVarLong(source.size);
+                out.writeVarLong(zigZag(source.lastModified));
+                out.writeVarLong(list.size());
+                out.writeVarLong(usernames.size());
+
+                for(String username : usernames){
+                    if(username == null){
+                        out.writeVarLong(0);
+                    } else {
+                        byte[] bytes = username.getBytes(StandardCharsets.UTF_8);
+                        out.writeVarLong(bytes.length + 1L);
+                        out.write(bytes);
+                    }
+                }
+
+                long previous = 0;
+                boolean first = true;
+                for(Record record : list){
+                    long time = record.getTimeMillis();
+                    out.writeVarLong(first ? zigZag(time) : time - previous);
+                    out.writeVarLong(((long) record.getTerminal() << 1) | (record.isLogin() ? 1 : 0));
+                    out.writeVarLong(indexes[record.getUserId()] - 1);
+                    previous = time;
+                    first = false;
+                }
+
+                out.writeChecksum();
+                out.flush();
+            }
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    /**
+    * reads the records of a snapshot and adds them to the list
+    *
+    * @param file the snapshot file
+    * @param list the list to add the records to
+    * @param source the log the snapshot has to be written for
+    * @return the number of records added
+    * @throws IOException if the file cannot be read, is not a snapshot,
+    * is damaged, or was not written for the log as it is now
+    */
+    public static int read(Path file, RecordList list, Source source) throws IOException{
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if(size > Integer.MAX_VALUE){
+                throw new IOException("Snapshot " + file + " is too large to be mapped.");
+            }
+            if(size < 12){
+                throw new IOException(file + " is not a snapshot.");
+            }
+
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            buffer.order(ByteOrder.BIG_ENDIAN);
+            if(buffer.getInt() != MAGIC){
+                throw new IOException(file + " is not a snapshot.");
+            }
+            if(buffer.getInt() != VERSION){
+                throw new IOException("Snapshot " + file + " has an unsupported version.");
+            }
+
+            //a snapshot of another log is rejected before the checksum is computed
+            try {
+                byte[] path = new byte[checkLength(readVarLong(buffer), buffer)];
+                buffer.get(path);
+                if(!source.path.equals(new String(path, StandardCharsets.UTF_8))){
+                    throw new IOException("Snapshot " + file + " was written for another log.");
+                }
+                if(readVarLong(buffer) != source.size || unZigZag(readVarLong(buffer)) != source.lastModified){
+                    throw new IOException("Snapshot " + file + " was written before the log was last changed.");
+                }
+            } catch (BufferUnderflowException | IllegalArgumentException ex) {
+                throw new IOException("Snapshot " + file + " is damaged.", ex);
+            }
+
+            //verify the whole file before adding anything to the list
+            CRC32 crc = new CRC32();
+            crc.update(buffer.duplicate().position(0).limit((int) size - 4));
+            if((int) crc.getValue() != buffer.getInt((int) size - 4)){
+                throw new IOException("Snapshot " + file + " is damaged.");
+            }
+            buffer.limit((int) size - 4);
+
+            try {
+                return decode(buffer, list);
+            } catch (BufferUnderflowException | IllegalArgumentException ex) {
+                throw new IOException("Snapshot " + file + " is damaged.", ex);
+            }
+        }
+    }
+
+    private static int decode(ByteBuffer buffer, RecordList list){
+        long records = readVarLong(buffer);
+        long users = readVarLong(buffer);
+        if(records > Integer.MAX_VALUE || users > records){
+            throw new IllegalArgumentException("Invalid record or user count.");
+        }
+
+        //usernames are resolved to user ids once, not per record
+        int[] userIds = new int[(int) users];
+        for(int i = 0; i < userIds.length; i++){
+            long length = readVarLong(buffer);
+            if(length > 0){
+                byte[] bytes = new byte[checkLength(length - 1, buffer)];
+                buffer.get(bytes);
+                userIds[i] = UserTable.idOf(new String(bytes, StandardCharsets.UTF_8));
+            } else {
+                userIds[i] = UserTable.NULL_ID;
+            }
+        }
+
+        Record[] decoded = new Record[(int) records];
+        long time = 0;
+        for(int i = 0; i < decoded.length; i++){
+            long delta = readVarLong(buffer);
+            time = (i == 0) ? unZigZag(delta) : time + delta;
+            long terminal = readVarLong(buffer);
+            long user = readVarLong(buffer);
+            if(user >= userIds.length || terminal >>> 1 == 0 || terminal >>> 1 > Integer.MAX_VALUE){
+                throw new IllegalArgumentException("Invalid record.");
+            }
+            decoded[i] = new Record((int) (terminal >>> 1), (terminal & 1) != 0, userIds[(int) user], time);
+        }
+
+        if(buffer.hasRemaining()){
+            throw new IllegalArgumentException("Unexpected bytes after the last record.");
+        }
+
+        //add places a record before the ones with the same time, so
+        //records with equal times are passed in reverse to come out in order
+        for(int start = 0; start < decoded.length; ){
+            int end = start + 1;
+            while(end < decoded.length && decoded[end].compareTo(decoded[start]) == 0){
+                end++;
+            }
+            Collections.reverse(Arrays.asList(decoded).subList(start, end));
+            start = end;
+        }
+        list.addAll(Arrays.asList(decoded));
+        return (int) records;
+    }
+
+    /* Returns the length of a string if the buffer holds that many bytes. */
+    private static int checkLength(long length, ByteBuffer buffer){
+        if(length < 0 || length > buffer.remaining()){
+            throw new IllegalArgumentException("Invalid string length.");
+        }
+        return (int) length;
+    }
+
+    private static long zigZag(long value){
+        return (value << 1) ^ (value >> 63);
+    }
+
+    private static long unZigZag(long value){
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    private static long readVarLong(ByteBuffer buffer){
+        long value = 0;
+        for(int shift = 0; shift < 64; shift += 7){
+            byte b = buffer.get();
+            value |= (long) (b & 0x7F) << shift;
+            if(b >= 0){
+                return value;
+            }
+        }
+        throw new IllegalArgumentException("Varint is too long.");
+    }
+
+    /**
+    * This class identifies a log as it is at one time: a snapshot is only
+    * read for the same file with the same size and last modified time.
+    */
+    public static final class Source {
+        private final String path;
+        private final long size;
+        private final long lastModified;
+
+        private Source(String path, long size, long lastModified){
+            this.path = path;
+            this.size = size;
+            this.lastModified = lastModified;
+        }
+
+        /**
+        * returns the current state of the log
+        *
+        * @param log the log file
+        * @return its real path, size and last modified time
+        * @throws IOException if the log cannot be found
+        */
+        public static Source of(Path log) throws IOException{
+            Path path = log.toRealPath();
+            BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+            return new Source(path.toString(), attributes.size(),
+                              attributes.lastModifiedTime().to(TimeUnit.NANOSECONDS));
+        }
+    }
+
+    /* Writes varints and keeps a checksum of everything written. */
+    private static class Encoder {
+        private final OutputStream out;
+        private final CRC32 crc = new CRC32();
+        private final byte[] scratch = new byte[10];
+
+        Encoder(OutputStream out){
+            this.out = out;
+        }
+
+        void write(byte[] bytes) throws IOException{
+            write(bytes, bytes.length);
+        }
+
+        void writeInt(int value) throws IOException{
+            scratch[0] = (byte) (value >>> 24);
+            scratch[1] = (byte) (value >>> 16);
+            scratch[2] = (byte) (value >>> 8);
+            scratch[3] = (byte) value;
+            write(scratch, 4);
+        }
+
+        void writeVarLong(long value) throws IOException{
+            int length = 0;
+            while((value & ~0x7FL) != 0){
+                scratch[length++] = (byte) ((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            scratch[length++] = (byte) value;
+            write(scratch, length);
+        }
+
+        /* Writes the checksum of everything written so far. */
+        void writeChecksum() throws IOException{
+            writeInt((int) crc.getValue());
+        }
+
+        void flush() throws IOException{
+            out.flush();
+        }
+
+        private void write(byte[] bytes, int length) throws IOException{
+            crc.update(bytes, 0, length);
+            out.write(bytes, 0, length);
+        }
+    }
+}
@@ -1,5 +1,6 @@
 package project3;
 
+import java.time.Instant;
 import java.util.Date;
 
 /**
@@ -9,6 +10,9 @@ import java.util.Date;
 */
 public class Session implements Comparable<Session>{
     
+    // shared by all sessions, formats times in the default time zone
+    private static final SessionFormatter FORMATTER = new SessionFormatter();
+
     private Record login;
     private Record logout;
 
@@ -30,13 +34,13 @@ public class Session implements Comparable<Session>{
                 throw new IllegalArgumentException("Login record cannot be null.");
             }
             if (logout != null) {
-                if (!login.getUsername().equals(logout.getUsername())) {
+                if (login.getUserId() != logout.getUserId()) {
                     throw new IllegalArgumentException("Login and logout usernames do not match.");
                 }
                 if (login.getTerminal() != logout.getTerminal()) {
                     throw new IllegalArgumentException("Login and logout terminal numbers do not match.");
                 }
-                if (login.getTime().after(logout.getTime())) {
+                if (login.getTimeMillis() > logout.getTimeMillis()) {
                     throw new IllegalArgumentException("Login time cannot be after logout time.");
                 }
                 if (!login.isLogin() || !logout.isLogout()) {
@@ -57,22 +61,7 @@ public class Session implements Comparable<Session>{
     */
     @Override
     public String toString(){
-        String duration;
-        String logoutTime;
-
-        if (logout == null) {
-            duration = "active session";
-            logoutTime = "still logged in";
-        } else {
-            long durationMillis = getDuration();
-            duration = formatDuration(durationMillis);
-            logoutTime = logout.getTime().toString();
-        }
-
-
-
-        return String.format("%s, terminal %d, duration %s\n    logged in: %s\n    logged out: %s",
-                getUsername(), getTerminal(), duration, getLoginTime().toString(), logoutTime);
+        return FORMATTER.format(this, new StringBuilder(128)).toString();
     }
 
     /**
@@ -103,6 +92,67 @@ public class Session implements Comparable<Session>{
         }
     }
 
+    /**
+    * returns the Login time
+    * @return milliseconds since the epoch
+    */
+    public long getLoginTimeMillis(){
+        return login.getTimeMillis();
+    }
+
+    /**
+    * returns whether the session has no logout record yet
+    * @return true if the session is still active
+    */
+    public boolean isActive(){
+        return logout == null;
+    }
+
+    /**
+    * returns the Logout time
+    *
+    * @return milliseconds since the epoch
+    * @throws IllegalStateException if the session is active; check isActive first
+    */
+    public long getLogoutTimeMillis(){
+        if(logout == null){
+            throw new IllegalStateException("The session is still active and has no logout time.");
+        }
+        return logout.getTimeMillis();
+    }
+
+    /*
+     * Returns the login record itself, for the lists that pair records
+     * into sessions and have to tell a record from an equal copy.
+     */
+    Record getLoginRecord(){
+        return login;
+    }
+
+    /* Returns the logout record itself, or null for an active session. */
+    Record getLogoutRecord(){
+        return logout;
+    }
+
+    /**
+    * returns the Login time
+    * @return Instant loginTime
+    */
+    public Instant getLoginInstant(){
+        return login.getInstant();
+    }
+
+    /**
+    * returns the Logout time
+    * @return Instant logoutTime, or null if the session is still active
+    */
+    public Instant getLogoutInstant(){
+        if(logout == null){
+            return null;
+        }
+        return logout.getInstant();
+    }
+
     /**
     * returns the username of the user
     * @return username
@@ -111,6 +161,14 @@ public class Session implements Comparable<Session>{
         return login.getUsername();
     }
 
+    /**
+    * returns the id of the user in the UserTable
+    * @return user id
+    */
+    public int getUserId() {
+        return login.getUserId();
+    }
+
     /**
     * returns the number of milliseconds ellapsed between 
     * the login time and logout time, or -1 if the session is still active;
@@ -121,24 +179,7 @@ public class Session implements Comparable<Session>{
         if(logout == null){
             return -1;
         }
-        return logout.getTime().getTime() - login.getTime().getTime();
-    }
-
-
-    /**
-    * formats the given duration in milliseconds into days, hours, minutes, and seconds
-    *
-    * @param durationMillis the duration in milliseconds
-    *
-    * @return a formatted string representing the duration
-    */
-    private String formatDuration(long durationMillis) {
-        long seconds = durationMillis / 1000 % 60;
-        long minutes = durationMillis / (60 * 1000) % 60;
-        long hours = durationMillis / (60 * 60 * 1000) % 24;
-        long days = durationMillis / (24 * 60 * 60 * 1000);
-
-        return String.format("%d days, %d hours, %d minutes, %d seconds", days, hours, minutes, seconds);
+        return logout.getTimeMillis() - login.getTimeMillis();
     }
 
 
@@ -152,7 +193,7 @@ public class Session implements Comparable<Session>{
      */
     @Override
     public int compareTo(Session other) {
-        return this.login.getTime().compareTo(other.login.getTime());
+        return Long.compare(this.login.getTimeMillis(), other.login.getTimeMillis());
     }
 
     /**
@@ -0,0 +1,154 @@
+package project3;
+
+import java.io.IOException;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.time.zone.ZoneRules;
+import java.util.Locale;
+import java.util.TimeZone;
+
+/**
+* This class turns Session objects into the text that Session.toString returns.
+*
+* Times are written in the same form as Date.toString, e.g.
+*     Thu Apr 05 14:03:09 EDT 1973
+* but without a Calendar per call: the zone rules and the short zone names
+* are looked up once, and every field is appended directly to the output.
+* A SessionFormatter has no mutable state and can be shared between threads.
+*
+* @author Carsten Kaiser
+*/
+public class SessionFormatter{
+
+    private static final String[] DAYS = {"Mon", "Tue", "Wed", "Thu", "Fri", "Sat", "Sun"};
+    private static final String[] MONTHS = {"Jan", "Feb", "Mar", "Apr", "May", "Jun",
+                                            "Jul", "Aug", "Sep", "Oct", "Nov", "Dec"};
+
+    private ZoneRules rules;
+    // the offsets of Date.toString, which has no local mean time before time zones
+    private TimeZone timeZone;
+    // short names of the zone, as printed by Date.toString
+    private String standardName;
+    private String daylightName;
+
+    /**
+    * default constructor that creates a formatter for the default time zone
+    */
+    public SessionFormatter(){
+        this(ZoneId.systemDefault());
+    }
+
+    /**
+    * one-parameter constructor that creates a formatter for the given time zone
+    *
+    * @throws IllegalArgumentException if zone is null
+    *
+    * @param zone the time zone in which times are written
+    */
+    public SessionFormatter(ZoneId zone){
+        if(zone == null){
+            throw new IllegalArgumentException("Time zone cannot be null.");
+        }
+        timeZone = TimeZone.getTimeZone(zone);
+        rules = zone.getRules();
+        standardName = timeZone.getDisplayName(false, TimeZone.SHORT, Locale.US);
+        daylightName = timeZone.getDisplayName(true, TimeZone.SHORT, Locale.US);
+    }
+
+    /**
+    * appends the text of the session to the builder
+    *
+    * @param session the session to format
+    * @param out the builder to append to
+    * @return out
+    */
+    public StringBuilder format(Session session, StringBuilder out){
+        out.append(session.getUsername())
+            .append(", terminal ").append(session.getTerminal())
+            .append(", duration ");
+
+        //a logout may be before 1970, so only the missing record makes a session active
+        boolean active = session.isActive();
+        if(active){
+            out.append("active session");
+        } else {
+            formatDuration(session.getDuration(), out);
+        }
+
+        out.append("\n    logged in: ");
+        formatTime(session.getLoginTimeMillis(), out);
+        out.append("\n    logged out: ");
+        if(active){
+            out.append("still logged in");
+        } else {
+            formatTime(session.getLogoutTimeMillis(), out);
+        }
+        return out;
+    }
+
+    /**
+    * appends the text of the session to the given output
+    *
+    * @param session the session to format
+    * @param out where to append the text
+    * @throws IOException if appending to out fails
+    */
+    public void format(Session session, Appendable out) throws IOException{
+        if(out instanceof StringBuilder){
+            format(session, (StringBuilder) out);
+        } else {
+            out.append(format(session, new StringBuilder(128)));
+        }
+    }
+
+    /**
+    * appends a time in the form of Date.toString
+    *
+    * @param millis the time in milliseconds since the epoch
+    * @param out the builder to append to
+    * @return out
+    */
+    public StringBuilder formatTime(long millis, StringBuilder out){
+        Instant instant = Instant.ofEpochMilli(millis);
+        long local = millis + timeZone.getOffset(millis);
+        LocalDateTime time = LocalDateTime.ofEpochSecond(Math.floorDiv(local, 1000), 0, ZoneOffset.UTC);
+
+        out.append(DAYS[time.getDayOfWeek().ordinal()]).append(' ')
+            .append(MONTHS[time.getMonthValue() - 1]).append(' ');
+        appendTwoDigits(time.getDayOfMonth(), out).append(' ');
+        appendTwoDigits(time.getHour(), out).append(':');
+        appendTwoDigits(time.getMinute(), out).append(':');
+        appendTwoDigits(time.getSecond(), out).append(' ');
+        out.append(rules.isDaylightSavings(instant) ? daylightName : standardName).append(' ')
+            .append(time.getYear());
+        return out;
+    }
+
+    /**
+    * appends a duration as days, hours, minutes and seconds
+    *
+    * @param millis the duration in milliseconds
+    * @param out the builder to append to
+    * @return out
+    */
+    public StringBuilder formatDuration(long millis, StringBuilder out){
+        long seconds = millis / 1000 % 60;
+        long minutes = millis / (60 * 1000) % 60;
+        long hours = millis / (60 * 60 * 1000) % 24;
+        long days = millis / (24 * 60 * 60 * 1000);
+
+        return out.append(days).append(" days, ")
+            .append(hours).append(" hours, ")
+            .append(minutes).append(" minutes, ")
+            .append(seconds).append(" seconds");
+    }
+
+    private static StringBuilder appendTwoDigits(int value, StringBuilder out){
+        if(value < 10){
+            out.append('0');
+        }
+        return out.append(value);
+    }
+}
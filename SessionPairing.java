@@ -0,0 +1,252 @@
+package project3;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+/**
+* This class pairs the login and logout records of one user into sessions,
+* for the stores that keep records but no sessions: ColumnarRecordStore,
+* OffHeapRecordStore and the snapshots of a ConcurrentRecordList. A store
+* only supplies the records of the user, in time order or latest first.
+*
+* A logout closes the oldest open login of the user on its terminal, if it
+* is later than that login. Logins that are never closed are active
+* sessions.
+*
+* @author Carsten Kaiser
+*/
+final class SessionPairing{
+
+    private SessionPairing(){
+    }
+
+    /**
+    * returns the first login session of the user
+    *
+    * @param records the records of the user in time order
+    * @return first login session
+    * @throws NoSuchElementException if the user has no login records
+    */
+    static Session first(UserRecords records){
+        try {
+            //the first login is the oldest open login on its terminal,
+            //so it is closed by the next later logout on that terminal
+            while(records.hasNext()){
+                Record login = records.next();
+                if(!login.isLogin()){
+                    continue;
+                }
+                while(records.hasNext()){
+                    Record record = records.next();
+                    if(!record.isLogin() && record.getTerminal() == login.getTerminal()
+                    && record.getTimeMillis() > login.getTimeMillis()){
+                        return new Session(login, record);
+                    }
+                }
+                return new Session(login, null);
+            }
+            throw new NoSuchElementException("Error: the specified user does not match any of the records in the list.");
+        } finally {
+            Metrics.scan(records.scanned);
+        }
+    }
+
+    /**
+    * returns the last login session of the user
+    *
+    * the records are walked back from the latest one; the walk ends early
+    * once there are as many logins still open before the last one as there
+    * are logouts after it, since those logouts close the older logins first
+    *
+    * @param latestFirst the records of the user, latest first
+    * @return last login session
+    * @throws NoSuchElementException if the user has no login records
+    */
+    static Session last(UserRecords latestFirst){
+        try {
+            //the records met before the last login are all logouts
+            List<Record> later = new ArrayList<>();
+            Record last = null;
+            while(last == null && latestFirst.hasNext()){
+                Record record = latestFirst.next();
+                if(record.isLogin()){
+                    last = record;
+                } else {
+                    later.add(record);
+                }
+            }
+            if(last == null){
+                throw new NoSuchElementException("Error: the specified user does not match any of the records in the list.");
+            }
+            List<Record> logouts = new ArrayList<>();
+            for(int i = later.size() - 1; i >= 0; i--){
+                if(later.get(i).getTerminal() == last.getTerminal()){
+                    logouts.add(later.get(i));
+                }
+            }
+
+            //the logins still open on the terminal are closed before the last one;
+            //walking back, a login is closed by a later logout that is not taken
+            //yet, so the logins left over are as many as those still open
+            ArrayDeque<Record> closing = new ArrayDeque<>();
+            List<Record> logins = new ArrayList<>();
+            int open = 0;
+            while(open < logouts.size() && latestFirst.hasNext()){
+                Record record = latestFirst.next();
+                if(record.getTerminal() != last.getTerminal()){
+                    continue;
+                }
+                if(!record.isLogin()){
+                    closing.addLast(record);
+                    continue;
+                }
+                if(logins.size() < logouts.size()){
+                    logins.add(record);
+                }
+                if(!closing.isEmpty() && closing.peekFirst().getTimeMillis() > record.getTimeMillis()){
+                    closing.pollFirst();
+                } else {
+                    open++;
+                }
+            }
+            if(open >= logouts.size()){
+                return new Session(last, null);
+            }
+
+            //the open logins are the latest ones before the last login, and
+            //each logout closes the oldest of them if it is later than it
+            int waiting = open;
+            for(Record logout : logouts){
+                Record oldest = (waiting > 0) ? logins.get(waiting - 1) : last;
+                if(logout.getTimeMillis() > oldest.getTimeMillis()){
+                    if(waiting == 0){
+                        return new Session(last, logout);
+                    }
+                    waiting--;
+                }
+            }
+            return new Session(last, null);
+        } finally {
+            Metrics.scan(latestFirst.scanned);
+        }
+    }
+
+    /**
+    * returns the total time of the sessions of the user that have a logout
+    *
+    * @param records the records of the user in time order
+    * @return the total time in milliseconds
+    * @throws NoSuchElementException if the user has no records
+    */
+    static long totalTime(UserRecords records){
+        try {
+            if(!records.hasNext()){
+                throw new NoSuchElementException("No records found for the specified user.");
+            }
+            long totalTime = 0;
+            Map<Integer, ArrayDeque<Record>> open = new HashMap<>();
+            while(records.hasNext()){
+                Record record = records.next();
+                Record login = pair(record, open);
+                if(login != null){
+                    totalTime += record.getTimeMillis() - login.getTimeMillis();
+                }
+            }
+            return totalTime;
+        } finally {
+            Metrics.scan(records.scanned);
+        }
+    }
+
+    /**
+    * returns all login sessions of the user, ordered by login time
+    *
+    * @param records the records of the user in time order
+    * @return a sorted list of the user's sessions
+    * @throws NoSuchElementException if the user has no records
+    */
+    static SortedLinkedList<Session> all(UserRecords records){
+        Map<Integer, ArrayDeque<Record>> open = new HashMap<>();
+        SortedLinkedList<Session> sessions = new SortedLinkedList<>();
+        try {
+            if(!records.hasNext()){
+                throw new NoSuchElementException("No records found for the specified user.");
+            }
+            while(records.hasNext()){
+                Record record = records.next();
+                Record login = pair(record, open);
+                if(login != null){
+                    sessions.add(new Session(login, record));
+                }
+            }
+        } finally {
+            Metrics.scan(records.scanned);
+        }
+
+        //any open logins are active sessions
+        for(ArrayDeque<Record> logins : open.values()){
+            for(Record login : logins){
+                sessions.add(new Session(login, null));
+            }
+        }
+        return sessions;
+    }
+
+    /*
+     * Opens a login, or closes the oldest open login on the terminal of a
+     * logout. Returns the login that the record closes, or null.
+     */
+    private static Record pair(Record record, Map<Integer, ArrayDeque<Record>> open){
+        if(record.isLogin()){
+            open.computeIfAbsent(record.getTerminal(), k -> new ArrayDeque<>()).addLast(record);
+            return null;
+        }
+
+        ArrayDeque<Record> logins = open.get(record.getTerminal());
+        if(logins != null && !logins.isEmpty() && record.getTimeMillis() > logins.peekFirst().getTimeMillis()){
+            return logins.pollFirst();
+        }
+        return null;
+    }
+
+    /**
+    * The records of one user, in the order a store walks them. A store
+    * only finds the next record; scanned counts the entries it looked at
+    * to find them, which is reported to the Metrics.
+    */
+    abstract static class UserRecords implements Iterator<Record> {
+        int scanned;
+        private Record next;
+        private boolean fetched;
+
+        /**
+        * returns the next record of the user
+        *
+        * @return the next record, or null if there is none
+        */
+        abstract Record nextRecord();
+
+        @Override
+        public boolean hasNext(){
+            if(!fetched){
+                next = nextRecord();
+                fetched = true;
+            }
+            return next != null;
+        }
+
+        @Override
+        public Record next(){
+            if(!hasNext()){
+                throw new NoSuchElementException("the end of the records reached");
+            }
+            fetched = false;
+            return next;
+        }
+    }
+}
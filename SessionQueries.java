@@ -0,0 +1,60 @@
+package project3;
+
+import java.util.NoSuchElementException;
+
+/**
+* This interface describes the session queries that can be run
+* against a collection of login records
+*
+* @author Carsten Kaiser
+*/
+public interface SessionQueries{
+
+    /**
+    * returns the first login session for the specified user,
+    * the one with the earliest login time
+    *
+    * @param user specified user
+    * @return first login session for user
+    *
+    * @throws NoSuchElementException if the specified user has no login records
+    * @throws IllegalArgumentException if user is null or empty
+    */
+    Session getFirstSession(String user);
+
+    /**
+    * returns the last login session for the specified user,
+    * the one with the latest login time
+    *
+    * @param user specified user
+    * @return last login session for user
+    *
+    * @throws NoSuchElementException if the specified user has no login records
+    * @throws IllegalArgumentException if user is null or empty
+    */
+    Session getLastSession(String user);
+
+    /**
+    * returns the total time in milliseconds the specified user has been
+    * logged in, counting only sessions with a logout record
+    *
+    * @param user the specified user
+    * @return the total time in milliseconds
+    *
+    * @throws NoSuchElementException if the specified user does not match any records
+    * @throws IllegalArgumentException if user is null or empty
+    */
+    long getTotalTime(String user);
+
+    /**
+    * returns all login sessions of the specified user,
+    * ordered from earliest to latest login time
+    *
+    * @param user the specified user
+    * @return a sorted list of the user's sessions
+    *
+    * @throws NoSuchElementException if the specified user does not match any records
+    * @throws IllegalArgumentException if user is null or empty
+    */
+    SortedLinkedList<Session> getAllSessions(String user);
+}
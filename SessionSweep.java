@@ -0,0 +1,108 @@
+package project3;
+
+import java.util.Iterator;
+import java.util.PriorityQueue;
+
+/**
+* This class sweeps over sessions in login order and measures how they overlap.
+*
+* It adds up the time of the sessions with a logout twice: in full for every
+* session, as getTotalTime does, and merged, so that time covered by several
+* overlapping sessions is counted once. It also finds the largest number of
+* sessions that were active at the same time. Active sessions have no logout,
+* so they are left out of both times but count towards the peak until the end.
+*
+* The sessions must be passed in login order, which the sorted lists of a
+* RecordList already are, so the sweep needs no sort; the logout times of
+* the sessions still active are kept in a heap, which makes the sweep
+* O(k log k) for k sessions.
+*
+* @author Carsten Kaiser
+*/
+public class SessionSweep{
+
+    private long rawTime;
+    private long mergedTime;
+    private int peakSessions;
+    private long peakTime;
+
+    /**
+    * sweeps over the closed sessions and the open logins
+    *
+    * @param closed sessions with a logout, ordered by login time
+    * @param open logins without a logout, ordered by time
+    */
+    SessionSweep(Iterator<Session> closed, Iterator<Record> open){
+        PriorityQueue<Long> ends = new PriorityQueue<>();
+        long coveredUntil = Long.MIN_VALUE;
+
+        Session session = closed.hasNext() ? closed.next() : null;
+        Record login = open.hasNext() ? open.next() : null;
+        while(session != null || login != null){
+            long start;
+            long end;
+            if(login == null || (session != null && session.getLoginTimeMillis() <= login.getTimeMillis())){
+                start = session.getLoginTimeMillis();
+                end = session.getLogoutTimeMillis();
+                session = closed.hasNext() ? closed.next() : null;
+
+                //only the part after the sessions merged so far is new time
+                rawTime += end - start;
+                if(end > coveredUntil){
+                    mergedTime += end - Math.max(start, coveredUntil);
+                    coveredUntil = end;
+                }
+            } else {
+                start = login.getTimeMillis();
+                end = Long.MAX_VALUE;
+                login = open.hasNext() ? open.next() : null;
+            }
+
+            //sessions that ended by this login are no longer active
+            while(!ends.isEmpty() && ends.peek() <= start){
+                ends.poll();
+            }
+            ends.add(end);
+            if(ends.size() > peakSessions){
+                peakSessions = ends.size();
+                peakTime = start;
+            }
+        }
+    }
+
+    /**
+    * returns the time of the closed sessions, counting every session in full
+    * @return total time in milliseconds
+    */
+    public long getRawTime(){
+        return rawTime;
+    }
+
+    /**
+    * returns the time during which at least one closed session was active,
+    * so that overlapping sessions are counted once
+    * @return merged time in milliseconds
+    */
+    public long getMergedTime(){
+        return mergedTime;
+    }
+
+    /**
+    * returns the largest number of sessions that were active at the same
+    * time; a session is active from its login up to, but not including,
+    * its logout
+    * @return peak number of concurrent sessions
+    */
+    public int getPeakSessions(){
+        return peakSessions;
+    }
+
+    /**
+    * returns the time at which the peak was first reached
+    * @return time of the peak in milliseconds since the epoch,
+    * 0 if there were no sessions
+    */
+    public long getPeakTime(){
+        return peakTime;
+    }
+}
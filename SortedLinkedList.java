@@ -1,7 +1,16 @@
 package project3;
 
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
 import java.util.Iterator;
 import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 /**
  * This is an implementation of a sorted doubly-linked list.
@@ -9,6 +18,19 @@ import java.util.NoSuchElementException;
  * based on the natural order of the elements.
  * This list does not allow null elements.
  *
+ * In addition to the doubly-linked nodes the list keeps a probabilistic
+ * skip-list index over them, so that elements arriving out of order can
+ * still be placed in O(log n) time. Every index link also records how many
+ * elements it skips, which makes positional access (get, indexOf, rank)
+ * O(log n) as well.
+ *
+ * The natural ordering does not have to be consistent with equals: a Record,
+ * for example, compares by time only. Elements that compare equal form a run,
+ * in which a newly added element goes in front of the ones already there.
+ * Searches by order (contains, rank, the iterators and ranges) treat the run
+ * as one value; indexOf and remove look for an element in the run that is
+ * equal to the argument.
+ *
  * @author Joanna Klukowska
  * @author Carsten Kaiser
  *
@@ -17,10 +39,30 @@ import java.util.NoSuchElementException;
 public class SortedLinkedList<E extends Comparable<E>>
     implements Iterable<E> {
 
+    /* maximum number of index levels; with p = 1/4 this covers 4^16 elements */
+    private static final int MAX_LEVEL = 16;
+    /* get() walks back from the tail for indexes this close to the end */
+    private static final int TAIL_WALK_LIMIT = 16;
+    /* addAll() inserts one by one if the list is this many times larger than the batch */
+    private static final int SMALL_BATCH_RATIO = 32;
+
     private Node head;
     private Node tail;
     private int size;
 
+    /* first and last node on each index level above the bottom one
+     * (slot 0 is unused, the bottom level is head/tail) */
+    private Node[] levelHeads;
+    private Node[] levelTails;
+    /* number of elements skipped by the link to levelHeads[i] */
+    private int[] headSpans;
+    /* number of levels currently in use */
+    private int level;
+    /* set once the list is shared and must not change any more */
+    private boolean readOnly;
+    /* set if inserts into this list are counted by the Metrics */
+    private boolean countInserts;
+
     /**
      * Constructs a new empty sorted linked list.
      */
@@ -28,70 +70,295 @@ public class SortedLinkedList<E extends Comparable<E>>
         head = null;
         tail = null;
         size = 0;
+        levelHeads = newNodeArray(MAX_LEVEL);
+        levelTails = newNodeArray(MAX_LEVEL);
+        headSpans = new int[MAX_LEVEL];
+        level = 1;
     }
 
     /**
      * Adds the specified element to the list in ascending order.
      *
+     * Elements that are not smaller than the current last element are
+     * appended in constant time. All other elements are placed using the
+     * skip-list index, which takes O(log n) comparisons on average.
+     *
      * @param element the element to add
      * @return true if the element was added successfully,
      * false otherwise (if element==null)
+     * @throws UnsupportedOperationException if the list is read-only
      */
     public boolean add(E element) {
+        checkWritable();
+        return insert(element);
+    }
+
+    /*
+     * Adds the element in ascending order, in front of the elements that
+     * compare equal to it.
+     */
+    private boolean insert(E element) {
         //check if parameter is null
         if(element == null){
             return false;
         }
 
-        Node newNode = new Node(element);
+        Node newNode = new Node(element, randomLevel());
 
-        //if list is empty
-        if(head == null){
-            head = newNode;
-            tail = newNode;
-        } else {
-            Node current = head;
-            Node previous = null;
+        //new index levels start out as a single link over the whole list
+        for(int i = level; i < newNode.levels(); i++){
+            levelHeads[i] = null;
+            levelTails[i] = null;
+            headSpans[i] = size;
+        }
+        if(newNode.levels() > level){
+            level = newNode.levels();
+        }
 
-            while(current != null && element.compareTo(current.data) > 0){
-                previous = current;
-                current = current.next;
+        //add to end of list (in-order data)
+        if(head == null){
+            linkLast(newNode);
+            if(countInserts && Metrics.isEnabled()){
+                Metrics.insert(0, 0);
+            }
+        } else if(element.compareTo(tail.data) > 0){
+            linkLast(newNode);
+            if(countInserts && Metrics.isEnabled()){
+                Metrics.insert(1, 0);
             }
+        }
 
-            //add to beginning of list
-            if(previous == null){
-                newNode.next = head;
-                head.prev = newNode;
-                head = newNode;
-            } 
-            
-            //add to end of list
-            else if(current == null){
-                    previous.next = newNode;
-                    newNode.prev = previous;
-                    tail = newNode;
-                }
+        //add to beginning or middle of list
+        else {
+            Node[] update = newNodeArray(MAX_LEVEL);
+            int[] rank = new int[MAX_LEVEL];
+            int visited = findPredecessors(element, update, rank);
 
-            //add to middle of list
-            else {
-                previous.next = newNode;
-                newNode.prev = previous;
-                newNode.next = current;
-                current.prev = newNode;
+            //the search compares every node it visits, and on each level
+            //the node it stops at, unless it ran off the end of the level
+            if(countInserts && Metrics.isEnabled()){
+                int comparisons = 1 + visited;
+                for(int i = 0; i < level; i++){
+                    if(forward(update[i], i) != null){
+                        comparisons++;
+                    }
+                }
+                Metrics.insert(comparisons, visited);
             }
+            linkAfter(newNode, update, rank);
         }
-        
+
         size++;
         return true;
     }
 
+    /**
+     * Adds all elements of the collection to the list. The list ends up
+     * the same as after adding the elements one at a time, in the order
+     * of the collection, but a large batch is sorted once and merged into
+     * the list in a single pass instead of being inserted element by element.
+     *
+     * The batch is sorted with a stable merge sort that finds runs that are
+     * already in order, so a batch that is sorted or nearly sorted costs
+     * little more than a scan. Null elements are skipped.
+     *
+     * @param elements the elements to add
+     * @return the number of elements added
+     * @throws UnsupportedOperationException if the list is read-only
+     */
+    @SuppressWarnings("unchecked")
+    public int addAll(Collection<? extends E> elements) {
+        checkWritable();
+
+        Object[] batch = elements.toArray();
+        int count = 0;
+        for(Object element : batch){
+            if(element != null){
+                batch[count++] = element;
+            }
+        }
+        if(count == 0){
+            return 0;
+        }
+
+        //a few elements are cheaper to insert than a pass over a long list
+        if((long) count * SMALL_BATCH_RATIO < size){
+            for(int i = 0; i < count; i++){
+                insert((E) batch[i]);
+            }
+            return count;
+        }
+
+        Arrays.sort(batch, 0, count);
+        //add() puts an element in front of the equal ones already there,
+        //so equal elements of the batch end up in reverse order
+        long comparisons = 0;
+        for(int start = 0; start < count; ){
+            int end = start + 1;
+            while(end < count){
+                comparisons++;
+                if(((E) batch[end]).compareTo((E) batch[start]) != 0){
+                    break;
+                }
+                end++;
+            }
+            for(int i = start, j = end - 1; i < j; i++, j--){
+                Object swap = batch[i];
+                batch[i] = batch[j];
+                batch[j] = swap;
+            }
+            start = end;
+        }
+
+        //merge the batch into the bottom level, new elements go first on ties
+        Node old = head;
+        Node last = null;
+        int next = 0;
+        while(old != null || next < count){
+            Node node;
+            if(old != null && next < count){
+                comparisons++;
+            }
+            if(next < count && (old == null || ((E) batch[next]).compareTo(old.data) <= 0)){
+                node = new Node((E) batch[next++], randomLevel());
+            } else {
+                node = old;
+                old = old.next;
+            }
+
+            node.prev = last;
+            if(last == null){
+                head = node;
+            } else {
+                last.next = node;
+            }
+            last = node;
+        }
+        last.next = null;
+        tail = last;
+        size += count;
+
+        rebuildIndex();
+        if(countInserts){
+            Metrics.bulkInsert(count, comparisons);
+        }
+        return count;
+    }
+
+    /*
+     * Makes the inserts into this list count towards the Metrics. Only the
+     * lists whose inserts are worth watching turn it on, not the indexes
+     * and query results that are built from them.
+     */
+    void countInserts() {
+        countInserts = true;
+    }
+
+    /*
+     * Links the index levels again from the levels of the nodes on the
+     * bottom level, in one pass over the list.
+     */
+    private void rebuildIndex() {
+        levelHeads = newNodeArray(MAX_LEVEL);
+        levelTails = newNodeArray(MAX_LEVEL);
+        headSpans = new int[MAX_LEVEL];
+        level = 1;
+
+        //last node seen on each level (null is before the head) and its position
+        Node[] last = newNodeArray(MAX_LEVEL);
+        int[] lastRank = new int[MAX_LEVEL];
+        int position = 0;
+
+        for(Node node = head; node != null; node = node.next){
+            position++;
+            for(int i = 1; i < node.levels(); i++){
+                setForward(last[i], i, node);
+                setSpan(last[i], i, position - lastRank[i]);
+                last[i] = node;
+                lastRank[i] = position;
+            }
+            level = Math.max(level, node.levels());
+        }
+
+        //the last link on each level runs to the end of the list
+        for(int i = 1; i < level; i++){
+            setForward(last[i], i, null);
+            setSpan(last[i], i, size - lastRank[i]);
+            levelTails[i] = last[i];
+        }
+    }
+
+    /*
+     * Links the new node in at the end of the list. The predecessors are
+     * the level tails, whose links to the end now skip one more element.
+     */
+    private void linkLast(Node newNode) {
+        for(int i = 0; i < level; i++){
+            Node previous = (i == 0) ? tail : levelTails[i];
+            if(i < newNode.levels()){
+                setForward(previous, i, newNode);
+                if(i > 0){
+                    levelTails[i] = newNode;
+                }
+            }
+            if(i > 0){
+                setSpan(previous, i, span(previous, i) + 1);
+            }
+        }
+
+        newNode.prev = tail;
+        tail = newNode;
+    }
+
+    /*
+     * Links the new node in after the nodes in update, which hold for each
+     * level the last node before the insertion point, at position rank[i]
+     * (the position of the first element is 1, "before the head" is 0).
+     */
+    private void linkAfter(Node newNode, Node[] update, int[] rank) {
+        for(int i = 0; i < newNode.levels(); i++){
+            Node previous = update[i];
+            Node current = forward(previous, i);
+
+            setForward(newNode, i, current);
+            setForward(previous, i, newNode);
+            if(i > 0){
+                setSpan(newNode, i, span(previous, i) - (rank[0] - rank[i]));
+                setSpan(previous, i, rank[0] - rank[i] + 1);
+                if(current == null){
+                    levelTails[i] = newNode;
+                }
+            }
+        }
+
+        //links on the higher levels now skip one more element
+        for(int i = newNode.levels(); i < level; i++){
+            setSpan(update[i], i, span(update[i], i) + 1);
+        }
+
+        //fix the backward links on the bottom level
+        newNode.prev = update[0];
+        if(newNode.next == null){
+            tail = newNode;
+        } else {
+            newNode.next.prev = newNode;
+        }
+    }
+
     /**
      * Removes all elements from the list.
+     *
+     * @throws UnsupportedOperationException if the list is read-only
      */
     public void clear() {
+        checkWritable();
         head = null;
         tail = null;
         size = 0;
+        levelHeads = newNodeArray(MAX_LEVEL);
+        levelTails = newNodeArray(MAX_LEVEL);
+        headSpans = new int[MAX_LEVEL];
+        level = 1;
     }
 
     /**
@@ -109,17 +376,11 @@ public class SortedLinkedList<E extends Comparable<E>>
 
         E element = (E) o;
 
-        Node current = head;
-        while(current != null){
-            if(current.data.compareTo(element) == 0)
-            {
-                return true;
-            }
+        Node[] update = newNodeArray(MAX_LEVEL);
+        findPredecessors(element, update, new int[MAX_LEVEL]);
+        Node current = forward(update[0], 0);
 
-            current = current.next;
-        }
-
-        return false;
+        return current != null && current.data.compareTo(element) == 0;
     }
 
     /**
@@ -135,18 +396,45 @@ public class SortedLinkedList<E extends Comparable<E>>
             throw new IndexOutOfBoundsException("Index out of bounds: " + index);
         }
 
-        Node current = head;
-        int currentIndex = 0;
-
-        while(currentIndex != index){
-            current = current.next;
-            currentIndex++;
+        //close to the end it is cheaper to walk back from the tail
+        if(size - 1 - index < TAIL_WALK_LIMIT){
+            Node current = tail;
+            for(int currentIndex = size - 1; currentIndex != index; currentIndex--){
+                current = current.prev;
+            }
+            return current.data;
         }
 
-        return current.data;
+        return nodeAt(index + 1).data;
 
     }
 
+    /**
+     * Returns the first (smallest) element in the list.
+     *
+     * @return the first element in the list
+     * @throws NoSuchElementException if the list is empty
+     */
+    public E getFirst() throws NoSuchElementException {
+        if(head == null){
+            throw new NoSuchElementException("the list is empty");
+        }
+        return head.data;
+    }
+
+    /**
+     * Returns the last (largest) element in the list.
+     *
+     * @return the last element in the list
+     * @throws NoSuchElementException if the list is empty
+     */
+    public E getLast() throws NoSuchElementException {
+        if(tail == null){
+            throw new NoSuchElementException("the list is empty");
+        }
+        return tail.data;
+    }
+
     /**
      * Returns the index of the first occurrence of the specified element in the list,
      * or -1 if the element is not in the list.
@@ -174,23 +462,27 @@ public class SortedLinkedList<E extends Comparable<E>>
      * @return the index of the first occurrence of the element, starting at the specified index,
      * or -1 if the element is not found
      */
+    @SuppressWarnings("unchecked")
     public int nextIndexOf(Object o, int index) {
         if(o == null || index < 0 || index >= size){
             return -1;
         }
 
-        Node current = head;
-        int currentIndex = 0;
-
-        //move current to starting index
-        while(currentIndex != index && current != null){
-            current = current.next;
-            currentIndex++;
+        //equal elements form a run that starts right after the predecessors
+        Node[] update = newNodeArray(MAX_LEVEL);
+        int[] rank = new int[MAX_LEVEL];
+        try {
+            findPredecessors((E) o, update, rank);
+        } catch (ClassCastException ex) {
+            return -1;
         }
 
-        //from starting index, search for Object o
-        while (current != null) {
-            if (current.data.equals(o)) {
+        Node current = forward(update[0], 0);
+        int currentIndex = rank[0];
+
+        //search the run for Object o, starting at the specified index
+        while (current != null && current.data.compareTo((E) o) == 0) {
+            if (currentIndex >= index && current.data.equals(o)) {
                 return currentIndex; 
             }
             
@@ -201,56 +493,136 @@ public class SortedLinkedList<E extends Comparable<E>>
         return -1;
     }
 
+    /**
+     * Returns the number of elements in the list that are smaller than
+     * the specified element, i.e., the index at which the element would
+     * be inserted.
+     *
+     * @param element the element to rank
+     * @return the number of elements smaller than the element
+     * @throws NullPointerException if the element is null
+     */
+    public int rank(E element) {
+        if(element == null){
+            throw new NullPointerException("does not allow null");
+        }
+
+        int[] rank = new int[MAX_LEVEL];
+        findPredecessors(element, newNodeArray(MAX_LEVEL), rank);
+        return rank[0];
+    }
+
     /**
      * Removes the first occurence of the specified element from the list.
      *
      * @param o the element to remove
      * @return true if the element was removed successfully,
      * false otherwise
+     * @throws UnsupportedOperationException if the list is read-only
      */
+    @SuppressWarnings("unchecked")
     public boolean remove(Object o) {
+        checkWritable();
         if(o == null){
             return false;
         }
 
-        Node current = head;
-        
-        while(current != null){
-            if(current.data.equals(o)){
-                //if it is first node
-                if (current == head) {
-                    head = current.next; 
-                    if (head != null) {
-                        head.prev = null;
-                    } else {
-                        tail = null;
-                    }
-                } 
-                //if it is the last node
-                else if(current == tail){
-                    tail = current.prev; // Update tail to the previous node
-                    if (tail != null) {
-                        tail.next = null; // Set the new tail's next to null
-                    } else {
-                        head = null; // If the list is now empty, update head
-                    }
-                }
-                //remove a node in middle
-                else{
-                    current.prev.next = current.next; 
-                    current.next.prev = current.prev;
-                }
+        //locate the run of elements that compare equal to o
+        Node[] update = newNodeArray(MAX_LEVEL);
+        int[] rank = new int[MAX_LEVEL];
+        try {
+            findPredecessors((E) o, update, rank);
+        } catch (ClassCastException ex) {
+            return false;
+        }
+        Node current = forward(update[0], 0);
+        int position = rank[0] + 1;
 
+        while(current != null && current.data.compareTo((E) o) == 0){
+            if(current.data.equals(o)){
+                unlink(current, position, update, rank);
                 size--;
                 return true;
             }
             current = current.next;
-
+            position++;
         }
         return false;
 
     }
 
+    /*
+     * Removes the node at the given position from every level.
+     * update and rank hold, for each level, the last node that is smaller
+     * than the node's element and its position.
+     */
+    private void unlink(Node target, int position, Node[] update, int[] rank) {
+        for(int i = 0; i < level; i++){
+            //equal elements may sit between update[i] and the target
+            Node previous = update[i];
+            int previousRank = rank[i];
+            Node current = forward(previous, i);
+            while(current != null && current != target
+            && previousRank + span(previous, i) < position){
+                previousRank += span(previous, i);
+                previous = current;
+                current = forward(current, i);
+            }
+
+            if(current == target){
+                Node next = forward(target, i);
+                setForward(previous, i, next);
+                if(i > 0){
+                    setSpan(previous, i, span(previous, i) + span(target, i) - 1);
+                }
+                if(next == null){
+                    if(i == 0){
+                        tail = previous;
+                    } else {
+                        levelTails[i] = previous;
+                    }
+                }
+            } else if(i > 0){
+                //the link jumps over the target
+                setSpan(previous, i, span(previous, i) - 1);
+            }
+        }
+
+        //fix the backward link on the bottom level
+        if(target.next != null){
+            target.next.prev = target.prev;
+        }
+
+        //drop index levels that became empty
+        while(level > 1 && levelHeads[level - 1] == null){
+            level--;
+        }
+    }
+
+    /**
+     * Makes the list read-only, so that it can be handed out to several
+     * callers. Adding or removing elements afterwards throws
+     * UnsupportedOperationException.
+     */
+    void setReadOnly() {
+        readOnly = true;
+    }
+
+    /**
+     * Returns true if the list has been made read-only.
+     *
+     * @return true if the list cannot be changed
+     */
+    public boolean isReadOnly() {
+        return readOnly;
+    }
+
+    private void checkWritable() {
+        if(readOnly){
+            throw new UnsupportedOperationException("The list is read-only.");
+        }
+    }
+
     /**
      * Returns the size of the list.
      *
@@ -266,7 +638,138 @@ public class SortedLinkedList<E extends Comparable<E>>
      * @return an iterator over the elements in the list
      */
     public Iterator<E> iterator() {
-        return new ListIterator();
+        return new ListIterator(head);
+    }
+
+    /**
+     * Returns an iterator over the elements in the list that are not
+     * smaller than the specified element, in ascending order.
+     * Finding the first element takes O(log n) time.
+     *
+     * @param fromElement the lower bound (inclusive) of the iteration
+     * @return an iterator starting at the first element that is not smaller than fromElement
+     * @throws NullPointerException if fromElement is null
+     */
+    public Iterator<E> iteratorFrom(E fromElement) {
+        if(fromElement == null){
+            throw new NullPointerException("does not allow null");
+        }
+
+        Node[] update = newNodeArray(MAX_LEVEL);
+        findPredecessors(fromElement, update, new int[MAX_LEVEL]);
+        return new ListIterator(forward(update[0], 0));
+    }
+
+    /**
+     * Returns an iterator over the elements in the list in descending
+     * order, starting at the tail.
+     *
+     * @return an iterator over the elements from the last to the first
+     */
+    public Iterator<E> descendingIterator() {
+        return new DescendingIterator(tail, size);
+    }
+
+    /**
+     * Returns an iterator over the elements in the list that are
+     * smaller than the specified element, in descending order.
+     * Finding the first element takes O(log n) time.
+     *
+     * @param toElement the upper bound (exclusive) of the iteration
+     * @return an iterator starting at the last element that is smaller than toElement
+     * @throws NullPointerException if toElement is null
+     */
+    public Iterator<E> descendingIteratorBefore(E toElement) {
+        if(toElement == null){
+            throw new NullPointerException("does not allow null");
+        }
+
+        Node[] update = newNodeArray(MAX_LEVEL);
+        int[] rank = new int[MAX_LEVEL];
+        findPredecessors(toElement, update, rank);
+        return new DescendingIterator(update[0], rank[0]);
+    }
+
+    /**
+     * Returns a view of the elements in the list that are smaller than
+     * the specified element.
+     *
+     * @param toElement the upper bound (exclusive) of the view
+     * @return a view of the elements smaller than toElement
+     * @throws NullPointerException if toElement is null
+     */
+    public Range headSet(E toElement) {
+        if(toElement == null){
+            throw new NullPointerException("does not allow null");
+        }
+        return new Range(null, toElement);
+    }
+
+    /**
+     * Returns a view of the elements in the list that are not smaller
+     * than the specified element.
+     *
+     * @param fromElement the lower bound (inclusive) of the view
+     * @return a view of the elements not smaller than fromElement
+     * @throws NullPointerException if fromElement is null
+     */
+    public Range tailSet(E fromElement) {
+        if(fromElement == null){
+            throw new NullPointerException("does not allow null");
+        }
+        return new Range(fromElement, null);
+    }
+
+    /**
+     * Returns a view of the elements in the list from fromElement,
+     * inclusive, to toElement, exclusive.
+     *
+     * @param fromElement the lower bound (inclusive) of the view
+     * @param toElement the upper bound (exclusive) of the view
+     * @return a view of the elements in the range
+     * @throws NullPointerException if either bound is null
+     * @throws IllegalArgumentException if fromElement is greater than toElement
+     */
+    public Range subSet(E fromElement, E toElement) {
+        if(fromElement == null || toElement == null){
+            throw new NullPointerException("does not allow null");
+        }
+        if(fromElement.compareTo(toElement) > 0){
+            throw new IllegalArgumentException("fromElement is greater than toElement");
+        }
+        return new Range(fromElement, toElement);
+    }
+
+    /**
+     * Returns a spliterator over the elements in the list. It knows its
+     * size and splits in the middle, finding the middle element through
+     * the index in O(log n) time, so the list can feed parallel streams.
+     *
+     * The list must not change while the spliterator is in use.
+     *
+     * @return a spliterator over the elements in the list
+     */
+    @Override
+    public Spliterator<E> spliterator() {
+        return new NodeSpliterator(head, 0, size);
+    }
+
+    /**
+     * Returns a sequential stream of the elements in the list.
+     *
+     * @return a stream of the elements in ascending order
+     */
+    public Stream<E> stream() {
+        return StreamSupport.stream(spliterator(), false);
+    }
+
+    /**
+     * Returns a parallel stream of the elements in the list.
+     *
+     * @return a parallel stream of the elements in ascending order
+     */
+    public Stream<E> parallelStream() {
+        return StreamSupport.stream(spliterator(), true);
     }
 
     /**
@@ -334,11 +837,115 @@ public class SortedLinkedList<E extends Comparable<E>>
 
     }
 
+    /*
+     * Fills update with, for each index level, the last node whose element
+     * is smaller than the specified element (or null for "before the head"),
+     * and rank with the position of that node (the first element is at 1).
+     * Returns the number of nodes the search moved to.
+     */
+    private int findPredecessors(E element, Node[] update, int[] rank) {
+        Node previous = null;
+        int position = 0;
+        int visited = 0;
+
+        for(int i = level - 1; i >= 0; i--){
+            Node current = forward(previous, i);
+            while(current != null && current.data.compareTo(element) < 0){
+                position += span(previous, i);
+                previous = current;
+                current = forward(current, i);
+                visited++;
+            }
+            update[i] = previous;
+            rank[i] = position;
+        }
+        return visited;
+    }
+
+    /* Returns the node at the given position (the first element is at 1). */
+    private Node nodeAt(int position) {
+        Node previous = null;
+        int current = 0;
+
+        for(int i = level - 1; i >= 0; i--){
+            while(forward(previous, i) != null && current + span(previous, i) <= position){
+                current += span(previous, i);
+                previous = forward(previous, i);
+            }
+            if(current == position){
+                return previous;
+            }
+        }
+        return previous;
+    }
+
+    /* Returns the successor of n on the specified level, n == null means before the head. */
+    private Node forward(Node n, int i) {
+        if(n == null){
+            return (i == 0) ? head : levelHeads[i];
+        }
+        return (i == 0) ? n.next : n.skip[i - 1];
+    }
+
+    /* Sets the successor of n on the specified level, n == null means before the head. */
+    private void setForward(Node n, int i, Node next) {
+        if(n == null){
+            if(i == 0){
+                head = next;
+            } else {
+                levelHeads[i] = next;
+            }
+        } else if(i == 0){
+            n.next = next;
+        } else {
+            n.skip[i - 1] = next;
+        }
+    }
+
+    /*
+     * Returns the number of elements the link from n on the specified level
+     * skips over. A link to the end of the list counts the elements after n.
+     */
+    private int span(Node n, int i) {
+        if(i == 0){
+            return 1;
+        }
+        return (n == null) ? headSpans[i] : n.spans[i - 1];
+    }
+
+    /* Sets the number of elements the link from n on level i > 0 skips over. */
+    private void setSpan(Node n, int i, int span) {
+        if(n == null){
+            headSpans[i] = span;
+        } else {
+            n.spans[i - 1] = span;
+        }
+    }
+
+    /* Picks a geometric level (p = 1/4) for a new node. */
+    private static int randomLevel() {
+        int bits = ThreadLocalRandom.current().nextInt();
+        int levels = 1;
+        while((bits & 3) == 0 && levels < MAX_LEVEL){
+            levels++;
+            bits >>>= 2;
+        }
+        return levels;
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private Node[] newNodeArray(int length) {
+        return (Node[]) new SortedLinkedList.Node[length];
+    }
+
     /* Inner class to represent nodes of this list.*/
     private class Node implements Comparable<Node> {
         E data;
         Node next;
         Node prev;
+        /* forward links on index levels 1 and above, and how many elements they skip */
+        Node[] skip;
+        int[] spans;
         Node(E data) {
             if (data == null ) throw new NullPointerException ("does not allow null");
             this.data = data;
@@ -348,6 +955,16 @@ public class SortedLinkedList<E extends Comparable<E>>
             this.next = next;
             this.prev = prev;
         }
+        Node (E data, int levels) {
+            this(data);
+            if (levels > 1) {
+                this.skip = newNodeArray(levels - 1);
+                this.spans = new int[levels - 1];
+            }
+        }
+        int levels() {
+            return (skip == null) ? 1 : skip.length + 1;
+        }
         public int compareTo( Node n ) {
             return this.data.compareTo(n.data);
         }
@@ -356,7 +973,10 @@ public class SortedLinkedList<E extends Comparable<E>>
     /* A basic forward iterator for this list. */
     private class ListIterator implements Iterator<E> {
 
-        Node nextToReturn = head;
+        Node nextToReturn;
+        ListIterator(Node start) {
+            nextToReturn = start;
+        }
         @Override
         public boolean hasNext() {
             return nextToReturn != null;
@@ -372,4 +992,176 @@ public class SortedLinkedList<E extends Comparable<E>>
         }
 
     }
+
+    /* An iterator that follows the prev links from a node for a number of elements. */
+    private class DescendingIterator implements Iterator<E> {
+
+        Node nextToReturn;
+        int remaining;
+        DescendingIterator(Node start, int count) {
+            nextToReturn = start;
+            remaining = count;
+        }
+        @Override
+        public boolean hasNext() {
+            return remaining > 0;
+        }
+
+        @Override
+        public E next() throws NoSuchElementException {
+            if (remaining <= 0)
+                throw new NoSuchElementException("the start of the range reached");
+            E tmp = nextToReturn.data;
+            nextToReturn = nextToReturn.prev;
+            remaining--;
+            return tmp;
+        }
+
+    }
+
+    /*
+     * A spliterator over the elements at the indexes from index up to end,
+     * exclusive; current is the node at index.
+     */
+    private class NodeSpliterator implements Spliterator<E> {
+
+        Node current;
+        int index;
+        final int end;
+        NodeSpliterator(Node current, int index, int end) {
+            this.current = current;
+            this.index = index;
+            this.end = end;
+        }
+
+        @Override
+        public boolean tryAdvance(Consumer<? super E> action) {
+            if (index >= end) {
+                return false;
+            }
+            E tmp = current.data;
+            current = current.next;
+            index++;
+            action.accept(tmp);
+            return true;
+        }
+
+        @Override
+        public void forEachRemaining(Consumer<? super E> action) {
+            Node node = current;
+            for (int i = index; i < end; i++) {
+                action.accept(node.data);
+                node = node.next;
+            }
+            current = node;
+            index = end;
+        }
+
+        @Override
+        public Spliterator<E> trySplit() {
+            int remaining = end - index;
+            if (remaining < 2) {
+                return null;
+            }
+            //the first half is handed off, this one continues at the middle
+            int middle = index + remaining / 2;
+            NodeSpliterator prefix = new NodeSpliterator(current, index, middle);
+            current = nodeAt(middle + 1);
+            index = middle;
+            return prefix;
+        }
+
+        @Override
+        public long estimateSize() {
+            return end - index;
+        }
+
+        @Override
+        public int characteristics() {
+            return ORDERED | SORTED | SIZED | SUBSIZED | NONNULL;
+        }
+
+        @Override
+        public Comparator<? super E> getComparator() {
+            //null means the natural ordering
+            return null;
+        }
+    }
+
+    /**
+     * This class is a view of the elements of the list between two bounds.
+     * The bounds are looked up whenever the view is used, so the view
+     * reflects later changes to the list; it cannot be changed itself.
+     */
+    public class Range implements Iterable<E> {
+
+        private final E fromElement;
+        private final E toElement;
+
+        private Range(E fromElement, E toElement) {
+            this.fromElement = fromElement;
+            this.toElement = toElement;
+        }
+
+        /**
+         * Returns the number of elements in the view, in O(log n) time.
+         *
+         * @return the number of elements between the bounds
+         */
+        public int size() {
+            return end() - start();
+        }
+
+        /**
+         * Returns an iterator over the elements in the view, in ascending order.
+         *
+         * @return an iterator over the elements in the view
+         */
+        @Override
+        public Iterator<E> iterator() {
+            return Spliterators.iterator(spliterator());
+        }
+
+        /**
+         * Returns an iterator over the elements in the view, in descending order.
+         *
+         * @return an iterator from the last to the first element in the view
+         */
+        public Iterator<E> descendingIterator() {
+            int start = start();
+            int end = end();
+            return new DescendingIterator((end > start) ? nodeAt(end) : null, end - start);
+        }
+
+        /**
+         * Returns a spliterator over the elements in the view.
+         *
+         * @return a sized spliterator over the elements in the view
+         */
+        @Override
+        public Spliterator<E> spliterator() {
+            int start = start();
+            int end = end();
+            return new NodeSpliterator((end > start) ? nodeAt(start + 1) : null, start, end);
+        }
+
+        /**
+         * Returns a sequential stream of the elements in the view.
+         *
+         * @return a stream of the elements in ascending order
+         */
+        public Stream<E> stream() {
+            return StreamSupport.stream(spliterator(), false);
+        }
+
+        /* Returns the index of the first element in the view. */
+        private int start() {
+            return (fromElement == null) ? 0 : rank(fromElement);
+        }
+
+        /* Returns the index after the last element in the view. */
+        private int end() {
+            return (toElement == null) ? SortedLinkedList.this.size : rank(toElement);
+        }
+    }
 }
@@ -0,0 +1,101 @@
+package project3;
+
+/**
+* This class holds the summary of one user's sessions, as one line of
+* the report of all users
+*
+* @author Carsten Kaiser
+*/
+public class UserReport{
+
+    private String username;
+    private int sessionCount;
+    private long totalTime;
+    private long mergedTime;
+    private Session firstSession;
+    private Session lastSession;
+    private int maxConcurrent;
+
+    /**
+    * constructs the summary of a user's sessions
+    *
+    * @param username the user
+    * @param sessionCount the number of sessions, active ones included
+    * @param totalTime the total duration of the sessions with a logout, in milliseconds
+    * @param mergedTime the time during which a session with a logout was active, in milliseconds
+    * @param firstSession the session with the earliest login, null if there is none
+    * @param lastSession the session with the latest login, null if there is none
+    * @param maxConcurrent the largest number of sessions active at the same time
+    */
+    UserReport(String username, int sessionCount, long totalTime, long mergedTime,
+               Session firstSession, Session lastSession, int maxConcurrent){
+        this.username = username;
+        this.sessionCount = sessionCount;
+        this.totalTime = totalTime;
+        this.mergedTime = mergedTime;
+        this.firstSession = firstSession;
+        this.lastSession = lastSession;
+        this.maxConcurrent = maxConcurrent;
+    }
+
+    /**
+    * returns the username
+    * @return username
+    */
+    public String getUsername(){
+        return username;
+    }
+
+    /**
+    * returns the number of sessions of the user, active ones included
+    * @return number of sessions
+    */
+    public int getSessionCount(){
+        return sessionCount;
+    }
+
+    /**
+    * returns the total time the user has been logged in, counting only
+    * sessions with a logout record
+    * @return total time in milliseconds
+    */
+    public long getTotalTime(){
+        return totalTime;
+    }
+
+    /**
+    * returns the time during which the user was logged in, counting time
+    * covered by several overlapping sessions once; only sessions with a
+    * logout record are included
+    * @return merged time in milliseconds
+    */
+    public long getMergedTime(){
+        return mergedTime;
+    }
+
+    /**
+    * returns the session with the earliest login
+    * @return first session, or null if the user has no login records
+    */
+    public Session getFirstSession(){
+        return firstSession;
+    }
+
+    /**
+    * returns the session with the latest login
+    * @return last session, or null if the user has no login records
+    */
+    public Session getLastSession(){
+        return lastSession;
+    }
+
+    /**
+    * returns the largest number of the user's sessions that were active
+    * at the same time; a session is active from its login up to, but not
+    * including, its logout
+    * @return maximum number of concurrent sessions
+    */
+    public int getMaxConcurrent(){
+        return maxConcurrent;
+    }
+}
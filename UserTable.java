@@ -0,0 +1,109 @@
+package project3;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+* This class gives every username a dense int id, shared by all records.
+*
+* A Record keeps only the id of its user, so every username is stored once
+* no matter how many records it has, and records of the same user can be
+* compared with an int comparison instead of String.equals. A query
+* resolves its username to an id once with lookup.
+*
+* Ids are handed out in order of first use, starting at 1; id 0 stands for
+* a null username. The table is static and lives as long as the process:
+* every list and store shares it, and usernames are never removed, not
+* even when the last record with them is removed or its list is dropped.
+* A process that loads many logs with different users keeps all of their
+* names. The table may be used by several threads at once: lookups do not
+* lock, only new usernames do.
+*
+* @author Carsten Kaiser
+*/
+public final class UserTable{
+
+    /** the id of a null username */
+    public static final int NULL_ID = 0;
+
+    private static final ConcurrentHashMap<String, Integer> ids = new ConcurrentHashMap<>();
+    // usernames by id, replaced by a larger copy when it is full
+    private static volatile String[] names = new String[64];
+    // number of ids handed out, NULL_ID included
+    private static volatile int count = 1;
+
+    private UserTable(){
+    }
+
+    /**
+    * returns the id of the username, giving it a new id the first time
+    *
+    * @param username the username, may be null
+    * @return the id of the username
+    */
+    public static int idOf(String username){
+        if(username == null){
+            return NULL_ID;
+        }
+        Integer id = ids.get(username);
+        return (id != null) ? id : add(username);
+    }
+
+    /**
+    * returns the id of the username without adding it
+    *
+    * @param username the username
+    * @return the id of the username, or -1 if no record has that username
+    */
+    public static int lookup(String username){
+        if(username == null){
+            return NULL_ID;
+        }
+        Integer id = ids.get(username);
+        return (id != null) ? id : -1;
+    }
+
+    /**
+    * returns the username with the given id
+    *
+    * @param id the id of the username
+    * @return the username, null for NULL_ID
+    * @throws IllegalArgumentException if no username has that id
+    */
+    public static String nameOf(int id){
+        //count is read first: a name is stored before count covers its id
+        if(id < 0 || id >= count){
+            throw new IllegalArgumentException("Unknown user id: " + id);
+        }
+        return names[id];
+    }
+
+    /**
+    * returns the number of ids handed out, NULL_ID included
+    *
+    * @return number of ids
+    */
+    public static int size(){
+        return count;
+    }
+
+    private static synchronized int add(String username){
+        //another thread may have added it since the lookup
+        Integer id = ids.get(username);
+        if(id != null){
+            return id;
+        }
+
+        int next = count;
+        String[] current = names;
+        if(next == current.length){
+            current = Arrays.copyOf(current, current.length * 2);
+        }
+        current[next] = username;
+        names = current;
+        //the name is stored before the id is published
+        count = next + 1;
+        ids.put(username, next);
+        return next;
+    }
+}
@@ -0,0 +1,248 @@
+package project3;
+
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+* This class measures the cost of loading and querying a RecordList, and
+* the record stores that share its queries, with JMH.
+*
+* Every combination of parameters runs in a JVM of its own after warm-up
+* iterations, so no benchmark measures code that an earlier one left
+* half-compiled. Results go to a Blackhole, so the JIT cannot drop the work.
+*
+* Benchmarks:
+*     load            - adding records one at a time, for every order of
+*                       logs of up to 100000 records; a shuffled log of a
+*                       million records already takes half a minute
+*     addAll          - one bulk add, for every size and order of the log
+*     columnar,       - adding records one at a time to a ColumnarRecordStore
+*     offHeap           or an OffHeapRecordStore, for every size and order
+*     first, last,    - one query for a user of the log, for every size,
+*     total, all        for uniform and Zipf-skewed user populations and
+*                       for every store
+*     format          - Session.toString
+*
+* Usage: mvn -Pjmh test-compile exec:exec [-Djmh.args="JMH OPTIONS"]
+* e.g. -Djmh.args="-p size=10000,100000 RecordListBenchmark.first"
+* The default sizes go from 10000 to 10000000 records.
+*
+* @author Carsten Kaiser
+*/
+@BenchmarkMode(Mode.AverageTime)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+// the largest logs need several GB of heap
+@Fork(value = 1, jvmArgsAppend = "-Xmx8g")
+public class RecordListBenchmark{
+
+    private static final int USERS = 1000;
+    private static final int QUERY_USERS = 2000;
+
+    /**
+    * The classes that answer the queries.
+    */
+    public enum Store {
+        RECORD_LIST,
+        COLUMNAR,
+        OFF_HEAP
+    }
+
+    /**
+    * A generated log, in the order to load it in.
+    */
+    @State(Scope.Benchmark)
+    public static class Log {
+        @Param({"10000", "100000", "1000000", "10000000"})
+        public int size;
+
+        @Param({"SORTED", "SHUFFLED", "MOSTLY_SORTED"})
+        public LogGenerator.Order order;
+
+        List<Record> records;
+
+        @Setup(Level.Trial)
+        public void generate(){
+            records = new LogGenerator(1, USERS, 0).generate(size, order);
+        }
+    }
+
+    /**
+    * A generated log that is small enough to add one record at a time in
+    * any order.
+    */
+    @State(Scope.Benchmark)
+    public static class SmallLog {
+        @Param({"10000", "100000"})
+        public int size;
+
+        @Param({"SORTED", "SHUFFLED", "MOSTLY_SORTED"})
+        public LogGenerator.Order order;
+
+        List<Record> records;
+
+        @Setup(Level.Trial)
+        public void generate(){
+            records = new LogGenerator(1, USERS, 0).generate(size, order);
+        }
+    }
+
+    /**
+    * A loaded store and the users to query, picked from the records so
+    * that busy users are queried more often.
+    */
+    @State(Scope.Thread)
+    public static class Loaded {
+        @Param({"10000", "100000", "1000000", "10000000"})
+        public int size;
+
+        // 0 for a uniform user population, larger for a more skewed one
+        @Param({"0", "1.2"})
+        public double skew;
+
+        @Param({"RECORD_LIST", "COLUMNAR", "OFF_HEAP"})
+        public Store store;
+
+        SessionQueries queries;
+        String[] users;
+        int next;
+
+        @Setup(Level.Trial)
+        public void load(){
+            List<Record> records = new LogGenerator(2, USERS, skew).generate(size, LogGenerator.Order.SORTED);
+            if(store == Store.COLUMNAR){
+                ColumnarRecordStore columns = new ColumnarRecordStore();
+                columns.addAll(records);
+                queries = columns;
+            } else if(store == Store.OFF_HEAP){
+                OffHeapRecordStore offHeap = new OffHeapRecordStore();
+                offHeap.addAll(records);
+                queries = offHeap;
+            } else {
+                RecordList list = new RecordList();
+                list.addAll(records);
+                queries = list;
+            }
+
+            Random random = new Random(3);
+            users = new String[QUERY_USERS];
+            for(int i = 0; i < users.length; i++){
+                users[i] = records.get(random.nextInt(records.size())).getUsername();
+            }
+        }
+
+        String nextUser(){
+            String user = users[next];
+            next = (next + 1) % users.length;
+            return user;
+        }
+    }
+
+    /**
+    * The sessions of the busiest user of a skewed log.
+    */
+    @State(Scope.Thread)
+    public static class Sessions {
+        Session[] sessions;
+        int next;
+
+        @Setup(Level.Trial)
+        public void load(){
+            LogGenerator generator = new LogGenerator(4, USERS, 1.2);
+            RecordList list = new RecordList();
+            list.addAll(generator.generate(100000, LogGenerator.Order.SORTED));
+            sessions = list.getAllSessions(generator.getUsername(0)).stream().toArray(Session[]::new);
+        }
+
+        Session nextSession(){
+            Session session = sessions[next];
+            next = (next + 1) % sessions.length;
+            return session;
+        }
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public void load(SmallLog log, Blackhole blackhole){
+        RecordList list = new RecordList();
+        for(Record record : log.records){
+            list.add(record);
+        }
+        blackhole.consume(list);
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public void addAll(Log log, Blackhole blackhole){
+        RecordList list = new RecordList();
+        blackhole.consume(list.addAll(log.records));
+        blackhole.consume(list);
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public void columnar(Log log, Blackhole blackhole){
+        ColumnarRecordStore store = new ColumnarRecordStore();
+        for(Record record : log.records){
+            store.add(record);
+        }
+        //the out-of-order records are merged by the first read
+        blackhole.consume(store.get(0));
+        blackhole.consume(store);
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public void offHeap(Log log, Blackhole blackhole){
+        OffHeapRecordStore store = new OffHeapRecordStore();
+        for(Record record : log.records){
+            store.add(record);
+        }
+        blackhole.consume(store.get(0));
+        blackhole.consume(store);
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public void first(Loaded loaded, Blackhole blackhole){
+        blackhole.consume(loaded.queries.getFirstSession(loaded.nextUser()));
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public void last(Loaded loaded, Blackhole blackhole){
+        blackhole.consume(loaded.queries.getLastSession(loaded.nextUser()));
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public void total(Loaded loaded, Blackhole blackhole){
+        blackhole.consume(loaded.queries.getTotalTime(loaded.nextUser()));
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public void all(Loaded loaded, Blackhole blackhole){
+        blackhole.consume(loaded.queries.getAllSessions(loaded.nextUser()));
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.NANOSECONDS)
+    public void format(Sessions sessions, Blackhole blackhole){
+        blackhole.consume(sessions.nextSession().toString());
+    }
+}
@@ -0,0 +1,102 @@
+package project3;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import org.junit.jupiter.api.Test;
+
+/**
+* Tests that RecordList pairs the same sessions however its records arrive.
+*
+* @author Carsten Kaiser
+*/
+class RecordListTest{
+
+    private static final String[] USERS = {"ann", "bob", "cy"};
+
+    /* Sessions as text, sorted, so sessions with equal login times compare the same. */
+    private static List<String> describe(Iterable<Session> sessions){
+        List<String> described = new ArrayList<>();
+        for(Session session : sessions){
+            described.add(session.getUsername() + " " + session.getTerminal() + " " + session.getLoginTimeMillis()
+                          + " " + (session.isActive() ? "active" : session.getLogoutTimeMillis()));
+        }
+        Collections.sort(described);
+        return described;
+    }
+
+    private static void assertSameSessions(RecordList expected, RecordList actual){
+        assertEquals(expected.size(), actual.size());
+        for(String user : USERS){
+            assertEquals(describe(expected.getAllSessions(user)), describe(actual.getAllSessions(user)), user);
+            assertEquals(expected.getTotalTime(user), actual.getTotalTime(user), user);
+            assertEquals(expected.getFirstSession(user).getLoginTimeMillis(),
+                         actual.getFirstSession(user).getLoginTimeMillis(), user);
+            assertEquals(expected.getLastSession(user).getLoginTimeMillis(),
+                         actual.getLastSession(user).getLoginTimeMillis(), user);
+        }
+        assertEquals(describe(expected.getSessionsBetween(Long.MIN_VALUE, Long.MAX_VALUE)),
+                     describe(actual.getSessionsBetween(Long.MIN_VALUE, Long.MAX_VALUE)));
+        for(long time = 0; time < 200; time += 5){
+            assertEquals(expected.getConcurrentUsers(time), actual.getConcurrentUsers(time), "at " + time);
+        }
+    }
+
+    /* Returns a log in which every user has records, with many equal times. */
+    private static List<Record> log(Random random, int size){
+        List<Record> records = new ArrayList<>();
+        for(int i = 0; i < size; i++){
+            String user = USERS[i % USERS.length];
+            records.add(new Record(1 + random.nextInt(3), random.nextBoolean(), user, random.nextInt(200)));
+        }
+        return records;
+    }
+
+    @Test
+    void outOfOrderAddsPairLikeASortedLoad(){
+        Random random = new Random(1);
+        for(int round = 0; round < 50; round++){
+            List<Record> records = log(random, 150);
+
+            RecordList added = new RecordList();
+            for(Record record : records){
+                added.add(record);
+            }
+            Collections.sort(records);
+            RecordList sorted = new RecordList();
+            sorted.addAll(records);
+
+            assertSameSessions(sorted, added);
+        }
+    }
+
+    @Test
+    void removalsAndBatchesPairLikeASortedLoad(){
+        Random random = new Random(2);
+        for(int round = 0; round < 50; round++){
+            List<Record> records = log(random, 150);
+            RecordList list = new RecordList();
+            list.addAll(records.subList(0, 100));
+            for(Record record : records.subList(100, 150)){
+                list.add(record);
+            }
+            for(int i = 0; i < 30; i++){
+                assertTrue(list.remove(records.remove(3 + random.nextInt(records.size() - 3))));
+            }
+            //the first records stay, so that every user keeps a session
+            List<Record> batch = log(random, 40);
+            list.addAll(batch);
+            records.addAll(batch);
+
+            Collections.sort(records);
+            RecordList sorted = new RecordList();
+            sorted.addAll(records);
+
+            assertSameSessions(sorted, list);
+        }
+    }
+}
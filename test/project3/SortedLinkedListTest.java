@@ -0,0 +1,191 @@
+package project3;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Collectors;
+import org.junit.jupiter.api.Test;
+
+/**
+* Tests of the skip-list index of SortedLinkedList against a plain list
+* that is kept sorted by hand.
+*
+* @author Carsten Kaiser
+*/
+class SortedLinkedListTest{
+
+    /* Records that compare equal when they have the same time. */
+    private static Record record(int terminal, long time){
+        return new Record(terminal, true, "user", time);
+    }
+
+    /* Adds the element to a plain list in front of the equal ones, as add does. */
+    private static <E extends Comparable<E>> void addSorted(List<E> reference, E element){
+        int index = 0;
+        while(index < reference.size() && reference.get(index).compareTo(element) < 0){
+            index++;
+        }
+        reference.add(index, element);
+    }
+
+    /* Checks the order, get, rank and the iterators of the list against the reference. */
+    private static void assertMatches(List<Integer> reference, SortedLinkedList<Integer> list){
+        assertEquals(reference.size(), list.size());
+        assertEquals(reference, list.stream().collect(Collectors.toList()));
+        for(int i = 0; i < reference.size(); i++){
+            assertEquals(reference.get(i), list.get(i), "get(" + i + ")");
+        }
+        for(int value = -1; value <= 1001; value += 7){
+            int smaller = 0;
+            while(smaller < reference.size() && reference.get(smaller) < value){
+                smaller++;
+            }
+            assertEquals(smaller, list.rank(value), "rank(" + value + ")");
+        }
+
+        List<Integer> descending = new ArrayList<>();
+        list.descendingIterator().forEachRemaining(descending::add);
+        for(int i = 0; i < descending.size(); i++){
+            assertEquals(reference.get(reference.size() - 1 - i), descending.get(i));
+        }
+    }
+
+    @Test
+    void equalElementsAreKeptNewestFirst(){
+        SortedLinkedList<Record> list = new SortedLinkedList<>();
+        Record first = record(1, 100);
+        Record second = record(2, 100);
+        Record third = record(3, 100);
+        list.add(record(4, 50));
+        list.add(first);
+        list.add(record(5, 200));
+        list.add(second);
+        list.add(third);
+
+        assertSame(third, list.get(1));
+        assertSame(second, list.get(2));
+        assertSame(first, list.get(3));
+        assertEquals(1, list.rank(record(9, 100)));
+        assertEquals(3, list.indexOf(first));
+        assertTrue(list.contains(record(9, 100)));
+
+        //remove takes the element that is equal, not the first that compares equal
+        assertTrue(list.remove(second));
+        assertSame(third, list.get(1));
+        assertSame(first, list.get(2));
+        assertFalse(list.remove(record(9, 100)));
+        assertEquals(4, list.size());
+    }
+
+    @Test
+    void addAllOrdersEqualElementsLikeAdd(){
+        Random random = new Random(1);
+        List<Record> batch = new ArrayList<>();
+        for(int i = 0; i < 500; i++){
+            batch.add(record(i + 1, random.nextInt(20)));
+        }
+
+        SortedLinkedList<Record> added = new SortedLinkedList<>();
+        for(Record record : batch){
+            added.add(record);
+        }
+        SortedLinkedList<Record> bulk = new SortedLinkedList<>();
+        assertEquals(batch.size(), bulk.addAll(batch));
+
+        Iterator<Record> expected = added.iterator();
+        for(Record record : bulk){
+            assertSame(expected.next(), record);
+        }
+        assertFalse(expected.hasNext());
+    }
+
+    @Test
+    void getAndRankAfterRemovals(){
+        Random random = new Random(2);
+        SortedLinkedList<Integer> list = new SortedLinkedList<>();
+        List<Integer> reference = new ArrayList<>();
+        for(int i = 0; i < 2000; i++){
+            Integer value = random.nextInt(1000);
+            list.add(value);
+            addSorted(reference, value);
+        }
+
+        for(int round = 0; round < 10; round++){
+            for(int i = 0; i < 150; i++){
+                Integer value = reference.get(random.nextInt(reference.size()));
+                assertTrue(list.remove(value));
+                reference.remove(value);
+            }
+            assertFalse(list.remove(Integer.valueOf(1000)));
+            assertMatches(reference, list);
+        }
+
+        while(!reference.isEmpty()){
+            Integer value = reference.remove(0);
+            assertTrue(list.remove(value));
+        }
+        assertEquals(0, list.size());
+        assertFalse(list.iterator().hasNext());
+        list.add(7);
+        assertEquals(Integer.valueOf(7), list.get(0));
+        assertEquals(Integer.valueOf(7), list.getLast());
+    }
+
+    @Test
+    void addAllIntoNonEmptyList(){
+        Random random = new Random(3);
+        //a large batch is merged, a small one is inserted element by element
+        for(int batchSize : new int[] {3, 20, 50, 1500}){
+            SortedLinkedList<Integer> list = new SortedLinkedList<>();
+            List<Integer> reference = new ArrayList<>();
+            for(int i = 0; i < 1000; i++){
+                Integer value = random.nextInt(1000);
+                list.add(value);
+                addSorted(reference, value);
+            }
+
+            List<Integer> batch = new ArrayList<>();
+            for(int i = 0; i < batchSize; i++){
+                Integer value = random.nextInt(1001) - 1;
+                batch.add(value);
+                addSorted(reference, value);
+            }
+            batch.add(null);
+
+            assertEquals(batchSize, list.addAll(batch));
+            assertMatches(reference, list);
+
+            //the index still places single elements after the bulk add
+            for(int i = 0; i < 100; i++){
+                Integer value = random.nextInt(1000);
+                list.add(value);
+                addSorted(reference, value);
+            }
+            assertMatches(reference, list);
+        }
+    }
+
+    @Test
+    void rangesAfterRemovals(){
+        SortedLinkedList<Integer> list = new SortedLinkedList<>();
+        for(int i = 0; i < 100; i++){
+            list.add(i);
+        }
+        for(int i = 0; i < 100; i += 3){
+            list.remove(Integer.valueOf(i));
+        }
+
+        List<Integer> range = new ArrayList<>();
+        list.subSet(10, 20).forEach(range::add);
+        assertEquals(List.of(10, 11, 13, 14, 16, 17, 19), range);
+        assertEquals(7, list.subSet(10, 20).size());
+        assertEquals(Integer.valueOf(10), list.iteratorFrom(9).next());
+        assertEquals(Integer.valueOf(8), list.descendingIteratorBefore(9).next());
+    }
+}